@@ -0,0 +1,65 @@
+package com.securefilesharing.config;
+
+import com.securefilesharing.service.audit.AuditTextSearch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Statement;
+
+/**
+ * Creates the ngram FULLTEXT indexes behind audit username / fileName search.
+ *
+ * ddl-auto=update cannot declare FULLTEXT indexes, so they are added here when
+ * missing. The first one rebuilds audit_logs, which can take a while on a
+ * large table; searches use plain LIKE until the indexes are in place.
+ * Stopwords are disabled for the build because the ngram parser drops every
+ * bigram containing one (e.g. any pair with "a" or "i").
+ */
+@Component
+public class AuditFullTextIndexRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditFullTextIndexRunner.class);
+
+    private static final String INDEX_EXISTS_SQL = "select count(*) from information_schema.statistics "
+            + "where table_schema = database() and table_name = 'audit_logs' and index_name = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AuditTextSearch auditTextSearch;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!auditTextSearch.isEnabled()) {
+            return;
+        }
+        try {
+            ensureIndex("ft_audit_username", "username");
+            ensureIndex("ft_audit_filename", "file_name");
+            auditTextSearch.markIndexed();
+        } catch (RuntimeException e) {
+            log.error("Audit full-text indexes unavailable, searching with LIKE: {}", e.getMessage());
+        }
+    }
+
+    private void ensureIndex(String name, String column) {
+        Integer existing = jdbcTemplate.queryForObject(INDEX_EXISTS_SQL, Integer.class, name);
+        if (existing != null && existing > 0) {
+            return;
+        }
+        log.info("Creating full-text index {} on audit_logs.{}", name, column);
+        // Both statements must run on the same connection for the session setting to apply
+        jdbcTemplate.execute((Statement statement) -> {
+            statement.execute("set session innodb_ft_enable_stopword = OFF");
+            statement.execute("alter table audit_logs add fulltext index " + name + " (" + column
+                    + ") with parser ngram");
+            return null;
+        });
+    }
+}
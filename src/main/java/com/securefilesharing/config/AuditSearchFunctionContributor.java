@@ -0,0 +1,23 @@
+package com.securefilesharing.config;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Registers {@code ngram_match(column, phrase)} for JPQL, rendered as MySQL
+ * {@code MATCH(column) AGAINST(phrase IN BOOLEAN MODE)}. Compare it with
+ * {@code > 0} so MySQL can answer it from the FULLTEXT index. Loaded through
+ * META-INF/services.
+ */
+public class AuditSearchFunctionContributor implements FunctionContributor {
+
+    @Override
+    public void contributeFunctions(FunctionContributions functionContributions) {
+        functionContributions.getFunctionRegistry().registerPattern(
+                "ngram_match",
+                "match(?1) against(?2 in boolean mode)",
+                functionContributions.getTypeConfiguration().getBasicTypeRegistry()
+                        .resolve(StandardBasicTypes.DOUBLE));
+    }
+}
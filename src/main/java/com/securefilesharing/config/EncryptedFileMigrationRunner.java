@@ -0,0 +1,100 @@
+package com.securefilesharing.config;
+
+import com.securefilesharing.entity.FileEntity;
+import com.securefilesharing.repository.FileRepository;
+import com.securefilesharing.service.storage.EncryptedFileStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Re-encrypts stored files that predate the segmented AES-GCM format or are
+ * sealed with a key other than the active one, and records the format version
+ * and key id on each {@link FileEntity}.
+ *
+ * Runs once per startup on a background thread so it never delays boot.
+ * Files are rewritten in place (same path), so download links and
+ * {@code encryptedPath} stay valid. Files that fail are logged and left for the
+ * next startup.
+ */
+@Component
+public class EncryptedFileMigrationRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(EncryptedFileMigrationRunner.class);
+
+    @Value("${app.storage.migration.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.storage.migration.batch-size:50}")
+    private int batchSize;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private EncryptedFileStore encryptedFileStore;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        Thread worker = new Thread(this::migrateAll, "encrypted-file-migration");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void migrateAll() {
+        long afterId = 0;
+        int activeKeyId = encryptedFileStore.activeKeyId();
+        int rewritten = 0;
+        int failed = 0;
+        while (true) {
+            List<FileEntity> batch = fileRepository.findNeedingMigration(afterId,
+                    EncryptedFileStore.FORMAT_SEGMENTED, activeKeyId, PageRequest.of(0, Math.max(1, batchSize)));
+            if (batch.isEmpty()) {
+                break;
+            }
+            for (FileEntity file : batch) {
+                afterId = file.getId();
+                try {
+                    if (migrate(file, activeKeyId)) {
+                        rewritten++;
+                    }
+                } catch (Exception e) {
+                    failed++;
+                    log.warn("Could not migrate stored file {} ({}): {}", file.getId(), file.getEncryptedPath(),
+                            e.getMessage());
+                }
+            }
+        }
+
+        if (rewritten > 0 || failed > 0) {
+            log.info("Encrypted file migration finished: rewrote {} file(s), {} failure(s)", rewritten, failed);
+        }
+    }
+
+    private boolean migrate(FileEntity file, int activeKeyId) throws Exception {
+        if (file.getEncryptedPath() == null) {
+            return false;
+        }
+        Path path = Paths.get(file.getEncryptedPath());
+        if (!Files.exists(path)) {
+            log.warn("Stored file {} is missing on disk: {}", file.getId(), path);
+            return false;
+        }
+        boolean rewritten = encryptedFileStore.migrate(path);
+        fileRepository.updateStoredFormat(file.getId(), EncryptedFileStore.FORMAT_SEGMENTED, activeKeyId);
+        return rewritten;
+    }
+}
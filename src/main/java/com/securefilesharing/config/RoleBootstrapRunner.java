@@ -3,6 +3,7 @@ package com.securefilesharing.config;
 import com.securefilesharing.entity.RoleDefinition;
 import com.securefilesharing.repository.RoleDefinitionRepository;
 import com.securefilesharing.security.Permission;
+import com.securefilesharing.service.RolePermissionService;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.stereotype.Component;
@@ -14,9 +15,12 @@ import java.util.Set;
 public class RoleBootstrapRunner implements ApplicationRunner {
 
     private final RoleDefinitionRepository roleDefinitionRepository;
+    private final RolePermissionService rolePermissionService;
 
-    public RoleBootstrapRunner(RoleDefinitionRepository roleDefinitionRepository) {
+    public RoleBootstrapRunner(RoleDefinitionRepository roleDefinitionRepository,
+            RolePermissionService rolePermissionService) {
         this.roleDefinitionRepository = roleDefinitionRepository;
+        this.rolePermissionService = rolePermissionService;
     }
 
     @Override
@@ -70,5 +74,7 @@ public class RoleBootstrapRunner implements ApplicationRunner {
         }
         role.setPermissions(perms);
         roleDefinitionRepository.save(role);
+        // Requests served before bootstrap may have cached, and signed tokens with, the baseline authorities
+        rolePermissionService.invalidateRole(name);
     }
 }
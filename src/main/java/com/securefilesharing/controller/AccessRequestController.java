@@ -3,14 +3,12 @@ package com.securefilesharing.controller;
 import com.securefilesharing.dto.AccessRequestDto;
 import com.securefilesharing.dto.CreateAccessRequestDto;
 import com.securefilesharing.entity.User;
-import com.securefilesharing.repository.UserRepository;
+import com.securefilesharing.security.services.CurrentUserResolver;
 import com.securefilesharing.service.AccessRequestService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -24,7 +22,7 @@ public class AccessRequestController {
     private AccessRequestService accessRequestService;
 
     @Autowired
-    private UserRepository userRepository;
+    private CurrentUserResolver currentUserResolver;
 
     @PostMapping("/{fileId}/access-requests")
     @PreAuthorize("hasAuthority('ROLE_ADMIN')")
@@ -75,14 +73,6 @@ public class AccessRequestController {
     }
 
     private User getCurrentUser() {
-        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        String username;
-        if (principal instanceof UserDetails) {
-            username = ((UserDetails) principal).getUsername();
-        } else {
-            username = principal.toString();
-        }
-        return userRepository.findByUsername(username)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        return currentUserResolver.getCurrentUser();
     }
 }
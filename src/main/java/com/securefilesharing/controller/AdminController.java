@@ -3,9 +3,11 @@ package com.securefilesharing.controller;
 import com.securefilesharing.entity.AuditLog;
 import com.securefilesharing.entity.FileEntity;
 import com.securefilesharing.entity.User;
+import com.securefilesharing.security.services.UserLookupMetrics;
 import com.securefilesharing.service.AdminService;
 import com.securefilesharing.service.AuditService;
 import com.securefilesharing.service.FileService;
+import com.securefilesharing.service.RolePermissionService;
 import com.securefilesharing.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
@@ -38,12 +40,30 @@ public class AdminController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserLookupMetrics userLookupMetrics;
+
+    @Autowired
+    private RolePermissionService rolePermissionService;
+
     // 3. Dashboard Page Stats
     @GetMapping("/dashboard-summary")
     public ResponseEntity<Map<String, Object>> getDashboardSummary() {
         return ResponseEntity.ok(adminService.getDashboardSummary());
     }
 
+    // User lookups per request since startup (expected: at most one)
+    @GetMapping("/metrics/user-lookups")
+    public ResponseEntity<Map<String, Object>> getUserLookupMetrics() {
+        return ResponseEntity.ok(userLookupMetrics.snapshot());
+    }
+
+    // Hit/miss counters of the role -> authorities cache
+    @GetMapping("/metrics/role-cache")
+    public ResponseEntity<Map<String, Object>> getRoleCacheMetrics() {
+        return ResponseEntity.ok(rolePermissionService.cacheStats());
+    }
+
     // 4. Pending Users Management
     @GetMapping("/pending-users")
     public ResponseEntity<List<User>> getPendingUsers() {
@@ -88,6 +108,13 @@ public class AdminController {
         return ResponseEntity.ok(Map.of("message", "User status toggled successfully"));
     }
 
+    // Sign the user out everywhere: every token issued so far stops working
+    @PostMapping("/revoke-tokens/{userId}")
+    public ResponseEntity<?> revokeUserTokens(@PathVariable Long userId) {
+        adminService.revokeUserTokens(userId);
+        return ResponseEntity.ok(Map.of("message", "User tokens revoked successfully"));
+    }
+
     // 6. File Management (Global View)
     @GetMapping("/files")
     public ResponseEntity<List<Map<String, Object>>> getAllFiles() {
@@ -95,7 +122,8 @@ public class AdminController {
     }
 
     @GetMapping("/file/download/{fileId}")
-    public ResponseEntity<?> downloadFile(@PathVariable Long fileId, @AuthenticationPrincipal UserDetails userDetails) {
+    public ResponseEntity<?> downloadFile(@PathVariable Long fileId, @AuthenticationPrincipal UserDetails userDetails,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
         try {
             Long adminId = null;
             if (userDetails instanceof com.securefilesharing.security.services.UserDetailsImpl) {
@@ -116,14 +144,10 @@ public class AdminController {
             adminUser.setUsername(userDetails.getUsername());
             adminUser.setRole("ROLE_ADMIN");
 
-            byte[] data = fileService.downloadFile(fileId, adminUser);
-            FileEntity file = fileService.getFile(fileId);
+            FileEntity file = fileService.prepareDownload(fileId, adminUser);
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(
-                            file.getContentType() != null ? file.getContentType() : "application/octet-stream"))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getFileName() + "\"")
-                    .body(data);
+            return FileDownloadResponses.stream(fileService, file, range, MediaType.parseMediaType(
+                    file.getContentType() != null ? file.getContentType() : "application/octet-stream"));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Error downloading file: " + e.getMessage());
         }
@@ -2,17 +2,18 @@ package com.securefilesharing.controller;
 
 import com.securefilesharing.entity.AuditLog;
 import com.securefilesharing.entity.User;
-import com.securefilesharing.repository.UserRepository;
+import com.securefilesharing.repository.AuditLogRepository;
+import com.securefilesharing.security.services.CurrentUserResolver;
 import com.securefilesharing.service.AuditService;
+import com.securefilesharing.service.audit.AuditLogExporter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -26,7 +27,13 @@ public class AuditController {
     private AuditService auditService;
 
     @Autowired
-    private UserRepository userRepository;
+    private CurrentUserResolver currentUserResolver;
+
+    @Autowired
+    private AuditLogRepository auditLogRepository;
+
+    @Autowired
+    private AuditLogExporter auditLogExporter;
 
     // ADMIN + AUDITOR: filter logs by user/file/date/action
     @GetMapping("/logs")
@@ -42,37 +49,36 @@ public class AuditController {
         return ResponseEntity.ok(auditService.searchLogs(actorUserId, fileId, fileOwnerId, normalize(action), from, to));
     }
 
-    // AUDITOR: export logs (CSV)
+    // AUDITOR: export logs (CSV), streamed; gzip=true compresses the download
     @GetMapping("/logs/export")
     @PreAuthorize("hasAuthority('PERM_REPORTS') or hasAuthority('ROLE_AUDITOR') or hasAuthority('ROLE_SUPER_ADMIN')")
-    public ResponseEntity<String> export(
+    public ResponseEntity<StreamingResponseBody> export(
             @RequestParam(value = "userId", required = false) Long actorUserId,
             @RequestParam(value = "fileId", required = false) Long fileId,
             @RequestParam(value = "fileOwnerId", required = false) Long fileOwnerId,
             @RequestParam(value = "action", required = false) String action,
             @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
-            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(value = "gzip", defaultValue = "false") boolean gzip
     ) {
-        List<AuditLog> logs = auditService.searchLogs(actorUserId, fileId, fileOwnerId, normalize(action), from, to);
-
-        StringBuilder csv = new StringBuilder();
-        csv.append("id,timestamp,action,actorUserId,fileId,fileOwnerId,targetUserId,details\n");
-        for (AuditLog l : logs) {
-            csv.append(val(l.getId())).append(',')
-                    .append(val(l.getTimestamp())).append(',')
-                    .append(csvEsc(l.getAction())).append(',')
-                    .append(val(l.getUserId())).append(',')
-                    .append(val(l.getFileId())).append(',')
-                    .append(val(l.getFileOwnerId())).append(',')
-                    .append(val(l.getTargetUserId())).append(',')
-                    .append(csvEsc(l.getDetails()))
-                    .append('\n');
-        }
+        String normalizedAction = normalize(action);
+        StreamingResponseBody body = auditLogExporter.csv(
+                "id,timestamp,action,actorUserId,fileId,fileOwnerId,targetUserId,details",
+                () -> auditLogRepository.streamSearch(actorUserId, fileId, fileOwnerId, normalizedAction, from, to),
+                (l, out) -> out.append(val(l.getId())).append(',')
+                        .append(val(l.getTimestamp())).append(',')
+                        .append(csvEsc(l.getAction())).append(',')
+                        .append(val(l.getUserId())).append(',')
+                        .append(val(l.getFileId())).append(',')
+                        .append(val(l.getFileOwnerId())).append(',')
+                        .append(val(l.getTargetUserId())).append(',')
+                        .append(csvEsc(l.getDetails())),
+                gzip);
 
         return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType("text/csv"))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=audits.csv")
-                .body(csv.toString());
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : "text/csv"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=audits.csv" + (gzip ? ".gz" : ""))
+                .body(body);
     }
 
     // USER: see audit for their own files (basic access/audit visibility)
@@ -88,15 +94,7 @@ public class AuditController {
     }
 
     private User getCurrentUser() {
-        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        String username;
-        if (principal instanceof UserDetails) {
-            username = ((UserDetails) principal).getUsername();
-        } else {
-            username = principal.toString();
-        }
-        return userRepository.findByUsername(username)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        return currentUserResolver.getCurrentUser();
     }
 
     private static String normalize(String s) {
@@ -10,22 +10,34 @@ import com.securefilesharing.repository.AuditLogRepository;
 import com.securefilesharing.repository.FileRepository;
 import com.securefilesharing.repository.UserRepository;
 import com.securefilesharing.service.AuditService;
+import com.securefilesharing.service.audit.AuditArchiver;
+import com.securefilesharing.service.audit.AuditFilterDictionary;
+import com.securefilesharing.service.audit.AuditLogExporter;
+import com.securefilesharing.service.audit.AuditStatistics;
+import com.securefilesharing.service.audit.AuditTextSearch;
+import com.securefilesharing.service.audit.AuditTimeSeries;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -59,14 +71,42 @@ public class AuditorController {
     @Autowired
     private AuditService auditService;
 
+    @Autowired
+    private AuditLogExporter auditLogExporter;
+
+    @Autowired
+    private AuditTextSearch auditTextSearch;
+
+    @Autowired
+    private AuditFilterDictionary auditFilterDictionary;
+
+    @Autowired
+    private AuditStatistics auditStatistics;
+
+    @Autowired
+    private AuditTimeSeries auditTimeSeries;
+
+    @Autowired
+    private AuditArchiver auditArchiver;
+
     // ==================== AUDIT LOG ENDPOINTS ====================
 
     /**
-     * GET /api/audit - Retrieve paginated audit logs with optional filters.
+     * GET /api/audit - Retrieve audit logs, newest first, with optional filters.
+     * 
+     * Without "cursor" or "after" the response keeps the offset shape
+     * (currentPage, totalItems, totalPages). With cursor=true, or an "after"
+     * cursor, pages are keyset-based instead: the response carries nextCursor,
+     * which is passed back as "after" to fetch the following page, and skips
+     * the count unless includeTotal is set.
      * 
      * Query parameters:
-     * - page: Page number (0-indexed, default: 0)
+     * - page: Page number for offset paging (0-indexed, default: 0; deep pages are slow)
+     * - cursor: Use cursor paging from the newest entry (default: false)
+     * - after: Cursor "timestamp,id" of the last entry already shown (implies cursor paging)
      * - size: Page size (default: 20, max: 100)
+     * - includeTotal: Also count all matching logs (cursor paging only, default: false)
+     * - includeArchived: Continue into archived days older than the hot window (default: false)
      * - username: Filter by username (partial match)
      * - action: Filter by action type (exact match)
      * - status: Filter by status (SUCCESS/FAILURE)
@@ -77,7 +117,11 @@ public class AuditorController {
     @GetMapping
     public ResponseEntity<Map<String, Object>> getAuditLogs(
             @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "false") boolean cursor,
+            @RequestParam(required = false) String after,
             @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean includeTotal,
+            @RequestParam(defaultValue = "false") boolean includeArchived,
             @RequestParam(required = false) String username,
             @RequestParam(required = false) String action,
             @RequestParam(required = false) String status,
@@ -91,11 +135,80 @@ public class AuditorController {
         if (size > 100) {
             size = 100;
         }
+        if (size < 1) {
+            size = 1;
+        }
+
+        Map<String, Object> response;
+        if (!cursor && normalizeFilter(after) == null) {
+            response = offsetPage(page, size, includeArchived, username, action, status, fileName,
+                    startDate, endDate);
+        } else {
+            LocalDateTime afterTs = null;
+            Long afterId = null;
+            if (normalizeFilter(after) != null) {
+                int comma = after.lastIndexOf(',');
+                try {
+                    afterTs = LocalDateTime.parse(after.substring(0, comma).trim());
+                    afterId = Long.parseLong(after.substring(comma + 1).trim());
+                } catch (RuntimeException e) {
+                    return ResponseEntity.badRequest().body(Map.of("message", "Invalid cursor: " + after));
+                }
+            }
+            response = cursorPage(afterTs, afterId, size, includeTotal, includeArchived, username, action,
+                    status, fileName, startDate, endDate);
+        }
 
-        Pageable pageable = PageRequest.of(page, size, Sort.by("timestamp").descending());
+        // Log the audit access
+        logAuditAccess(authentication, request, AuditService.ACTION_VIEW_AUDIT_LOGS, "AUDIT_LOG", null);
+
+        return ResponseEntity.ok(response);
+    }
+
+    private Map<String, Object> cursorPage(LocalDateTime afterTs, Long afterId, int size, boolean includeTotal,
+            boolean includeArchived, String username, String action, String status, String fileName,
+            LocalDateTime startDate, LocalDateTime endDate) {
+        Slice<AuditLog> slice = auditService.findLogsAfter(
+                afterTs,
+                afterId,
+                normalizeFilter(username),
+                normalizeFilter(action),
+                normalizeFilter(status),
+                normalizeFilter(fileName),
+                startDate,
+                endDate,
+                size,
+                includeArchived
+        );
+        List<AuditLog> logs = slice.getContent();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("logs", logs.stream().map(this::toAuditLogDto).collect(Collectors.toList()));
+        response.put("pageSize", size);
+        response.put("hasMore", slice.hasNext());
+        if (slice.hasNext()) {
+            AuditLog last = logs.get(logs.size() - 1);
+            response.put("nextCursor", last.getTimestamp() + "," + last.getId());
+        }
+        if (includeTotal) {
+            response.put("totalItems", auditService.countLogs(
+                    normalizeFilter(username),
+                    normalizeFilter(action),
+                    normalizeFilter(status),
+                    normalizeFilter(fileName),
+                    startDate,
+                    endDate,
+                    includeArchived));
+        }
+        return response;
+    }
+
+    private Map<String, Object> offsetPage(int page, int size, boolean includeArchived, String username,
+            String action, String status, String fileName, LocalDateTime startDate, LocalDateTime endDate) {
+        Pageable pageable = PageRequest.of(Math.max(0, page), size, Sort.by("timestamp").descending());
 
         // Use advanced search with username and fileName filters
-        Page<AuditLog> logsPage = auditLogRepository.searchLogsAdvanced(
+        Page<AuditLog> logsPage = auditService.searchLogsPaginated(
                 null, // userId not used in new API
                 normalizeFilter(username),
                 normalizeFilter(action),
@@ -104,7 +217,8 @@ public class AuditorController {
                 normalizeFilter(fileName),
                 startDate,
                 endDate,
-                pageable
+                pageable,
+                includeArchived
         );
 
         // Convert to DTOs
@@ -118,80 +232,91 @@ public class AuditorController {
         response.put("totalItems", logsPage.getTotalElements());
         response.put("totalPages", logsPage.getTotalPages());
         response.put("pageSize", size);
-
-        // Log the audit access
-        logAuditAccess(authentication, request, AuditService.ACTION_VIEW_AUDIT_LOGS, "AUDIT_LOG", null);
-
-        return ResponseEntity.ok(response);
+        return response;
     }
 
     /**
      * GET /api/audit/filters - Get available filter options (action types, usernames).
+     *
+     * Served from the in-memory AuditFilterDictionary, not from audit_logs.
      */
     @GetMapping("/filters")
     public ResponseEntity<Map<String, Object>> getFilterOptions() {
         Map<String, Object> filters = new HashMap<>();
-        filters.put("actions", auditLogRepository.findDistinctActions());
-        filters.put("usernames", auditLogRepository.findDistinctUsernames());
+        filters.put("actions", auditFilterDictionary.actions());
+        filters.put("usernames", auditFilterDictionary.usernames());
         filters.put("statuses", List.of("SUCCESS", "FAILURE"));
         return ResponseEntity.ok(filters);
     }
 
+    /**
+     * GET /api/audit/filters/usernames - Username suggestions for type-ahead.
+     *
+     * Query parameters:
+     * - prefix: Start of the username, case-insensitive
+     * - limit: Maximum suggestions (default: 20, max: 100)
+     */
+    @GetMapping("/filters/usernames")
+    public ResponseEntity<Map<String, Object>> getUsernameSuggestions(
+            @RequestParam(defaultValue = "") String prefix,
+            @RequestParam(defaultValue = "20") int limit) {
+        limit = Math.max(1, Math.min(limit, 100));
+        Map<String, Object> response = new HashMap<>();
+        response.put("prefix", prefix);
+        response.put("usernames", auditFilterDictionary.usernamesStartingWith(prefix.trim(), limit));
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * GET /api/audit/export - Export audit logs as CSV.
+     *
+     * All matching rows are streamed; pass gzip=true for a compressed download.
      */
     @GetMapping("/export")
     @PreAuthorize("hasAnyRole('AUDITOR', 'ADMIN', 'SUPER_ADMIN')")
-    public ResponseEntity<String> exportAuditLogs(
+    public ResponseEntity<StreamingResponseBody> exportAuditLogs(
             @RequestParam(required = false) String username,
             @RequestParam(required = false) String action,
             @RequestParam(required = false) String status,
             @RequestParam(required = false) String fileName,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "false") boolean gzip,
             Authentication authentication,
             HttpServletRequest request) {
 
-        // Get all matching logs (limited to 10000 for safety)
-        Pageable pageable = PageRequest.of(0, 10000, Sort.by("timestamp").descending());
-        Page<AuditLog> logsPage = auditLogRepository.searchLogsAdvanced(
-                null,
-                normalizeFilter(username),
-                normalizeFilter(action),
-                normalizeFilter(status),
-                null,
-                normalizeFilter(fileName),
-                startDate,
-                endDate,
-                pageable
-        );
-
-        StringBuilder csv = new StringBuilder();
-        csv.append("ID,Timestamp,Username,Action,Status,File Name,Entity ID,IP Address,User Agent,Details\n");
-
+        String usernameFilter = normalizeFilter(username);
+        String actionFilter = normalizeFilter(action);
+        String statusFilter = normalizeFilter(status);
+        String fileNameFilter = normalizeFilter(fileName);
+        String usernameMatch = auditTextSearch.matchPhrase(usernameFilter);
+        String fileNameMatch = auditTextSearch.matchPhrase(fileNameFilter);
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
-        for (AuditLog log : logsPage.getContent()) {
-            csv.append(val(log.getId())).append(',')
-                    .append(log.getTimestamp() != null ? log.getTimestamp().format(formatter) : "").append(',')
-                    .append(csvEsc(log.getUsername())).append(',')
-                    .append(csvEsc(log.getAction())).append(',')
-                    .append(csvEsc(log.getStatus())).append(',')
-                    .append(csvEsc(log.getFileName())).append(',')
-                    .append(val(log.getResourceId())).append(',')
-                    .append(csvEsc(log.getIpAddress())).append(',')
-                    .append(csvEsc(truncate(log.getUserAgent(), 50))).append(',')
-                    .append(csvEsc(log.getDetails()))
-                    .append('\n');
-        }
+        StreamingResponseBody body = auditLogExporter.csv(
+                "ID,Timestamp,Username,Action,Status,File Name,Entity ID,IP Address,User Agent,Details",
+                () -> auditLogRepository.streamLogsAdvanced(usernameFilter, usernameMatch, actionFilter,
+                        statusFilter, fileNameFilter, fileNameMatch, startDate, endDate),
+                (log, out) -> out.append(val(log.getId())).append(',')
+                        .append(log.getTimestamp() != null ? log.getTimestamp().format(formatter) : "").append(',')
+                        .append(csvEsc(log.getUsername())).append(',')
+                        .append(csvEsc(log.getAction())).append(',')
+                        .append(csvEsc(log.getStatus())).append(',')
+                        .append(csvEsc(log.getFileName())).append(',')
+                        .append(val(log.getResourceId())).append(',')
+                        .append(csvEsc(log.getIpAddress())).append(',')
+                        .append(csvEsc(truncate(log.getUserAgent(), 50))).append(',')
+                        .append(csvEsc(log.getDetails())),
+                gzip);
 
         logAuditAccess(authentication, request, "EXPORT_AUDIT_LOGS", "AUDIT_LOG", null);
 
         String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
         return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType("text/csv"))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=audit_logs_" + timestamp + ".csv")
-                .body(csv.toString());
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : "text/csv"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=audit_logs_" + timestamp + ".csv" + (gzip ? ".gz" : ""))
+                .body(body);
     }
 
     /**
@@ -213,6 +338,8 @@ public class AuditorController {
 
     /**
      * GET /api/audit/stats - Get summary statistics of audit logs.
+     * 
+     * Served from counters kept in memory, independent of the table size.
      */
     @GetMapping("/stats")
     public ResponseEntity<Map<String, Object>> getAuditStats(
@@ -220,15 +347,90 @@ public class AuditorController {
             HttpServletRequest request) {
 
         Map<String, Object> stats = new HashMap<>();
-        stats.put("totalLogs", auditLogRepository.count());
-        stats.put("successCount", auditLogRepository.countByStatus(AuditService.STATUS_SUCCESS));
-        stats.put("failureCount", auditLogRepository.countByStatus(AuditService.STATUS_FAILURE));
+        stats.put("totalLogs", auditStatistics.totalCount());
+        stats.put("successCount", auditStatistics.countByStatus(AuditService.STATUS_SUCCESS));
+        stats.put("failureCount", auditStatistics.countByStatus(AuditService.STATUS_FAILURE));
+        stats.put("last24Hours", auditStatistics.countSince(LocalDateTime.now().minusHours(24)));
+        stats.put("byAction", auditStatistics.countsBy(AuditStatistics.DIMENSION_ACTION));
+        stats.put("byResourceType", auditStatistics.countsBy(AuditStatistics.DIMENSION_RESOURCE_TYPE));
 
         logAuditAccess(authentication, request, "VIEW_AUDIT_STATS", "AUDIT_LOG", null);
 
         return ResponseEntity.ok(stats);
     }
 
+    /**
+     * GET /api/audit/timeseries - Audit activity counts per time bucket, for charts.
+     * 
+     * Query parameters:
+     * - granularity: minute, hour or day (default: hour; minute covers only the recent window)
+     * - dimension: total, action, status, resource_type or user (default: total)
+     * - from: Start of the range (ISO format, default: 24 hours before "to", 30 days for day)
+     * - to: End of the range, exclusive (ISO format, default: now)
+     */
+    @GetMapping("/timeseries")
+    public ResponseEntity<Map<String, Object>> getAuditTimeSeries(
+            @RequestParam(defaultValue = AuditTimeSeries.GRANULARITY_HOUR) String granularity,
+            @RequestParam(defaultValue = AuditStatistics.DIMENSION_TOTAL) String dimension,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            Authentication authentication,
+            HttpServletRequest request) {
+
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from
+                : AuditTimeSeries.GRANULARITY_DAY.equals(granularity) ? end.minusDays(30) : end.minusHours(24);
+
+        List<Map<String, Object>> buckets;
+        try {
+            buckets = auditTimeSeries.series(granularity, dimension, start, end);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("message", e.getMessage()));
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("granularity", granularity);
+        response.put("dimension", dimension);
+        response.put("from", start);
+        response.put("to", end);
+        response.put("buckets", buckets);
+
+        logAuditAccess(authentication, request, "VIEW_AUDIT_TIMESERIES", "AUDIT_LOG", null);
+
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * GET /api/audit/archives - List archived days of audit logs.
+     * 
+     * audit_logs only holds entries since hotSince; older days are in
+     * columnar archive files, searched by GET /api/audit with includeArchived=true.
+     */
+    @GetMapping("/archives")
+    public ResponseEntity<Map<String, Object>> getAuditArchives(
+            Authentication authentication,
+            HttpServletRequest request) throws IOException {
+
+        List<Map<String, Object>> archives = new ArrayList<>();
+        for (AuditArchiver.ArchiveFile archive : auditArchiver.listArchives()) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("day", archive.day().toString());
+            item.put("file", archive.path().getFileName().toString());
+            item.put("sizeBytes", Files.size(archive.path()));
+            archives.add(item);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("hotSince", auditArchiver.hotWindowStart());
+        response.put("archives", archives);
+
+        logAuditAccess(authentication, request, "VIEW_AUDIT_ARCHIVES", "AUDIT_LOG", null);
+
+        return ResponseEntity.ok(response);
+    }
+
     // ==================== FILE METADATA ENDPOINTS ====================
 
     /**
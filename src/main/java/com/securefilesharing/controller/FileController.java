@@ -2,23 +2,24 @@ package com.securefilesharing.controller;
 
 import com.securefilesharing.dto.FileMetadataDto;
 import com.securefilesharing.entity.FileEntity;
+import com.securefilesharing.entity.UploadSession;
 import com.securefilesharing.entity.User;
 import com.securefilesharing.entity.VisibilityType;
-import com.securefilesharing.repository.UserRepository;
+import com.securefilesharing.security.services.CurrentUserResolver;
 import com.securefilesharing.service.FileService;
+import com.securefilesharing.service.ResumableUploadService;
+import java.io.InputStream;
 import java.util.Objects;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -31,7 +32,10 @@ public class FileController {
     private FileService fileService;
 
     @Autowired
-    private UserRepository userRepository;
+    private ResumableUploadService resumableUploadService;
+
+    @Autowired
+    private CurrentUserResolver currentUserResolver;
 
     @PostMapping("/upload")
     @PreAuthorize("hasAuthority('ROLE_USER')")
@@ -46,25 +50,50 @@ public class FileController {
                 return ResponseEntity.badRequest().body("No file(s) provided");
             }
 
-            List<Map<String, Object>> uploaded = new ArrayList<>();
+            List<MultipartFile> nonEmpty = new ArrayList<>();
             for (MultipartFile file : files) {
-                if (file == null || file.isEmpty()) {
-                    continue;
+                if (file != null && !file.isEmpty()) {
+                    nonEmpty.add(file);
                 }
-                FileEntity saved = fileService.uploadFile(file, user, visibility, purpose, category);
+            }
+            if (nonEmpty.isEmpty()) {
+                return ResponseEntity.badRequest().body("All provided files were empty");
+            }
+
+            // Files are encrypted concurrently; one failing file does not fail the rest.
+            List<FileService.UploadResult> results = fileService.uploadFiles(nonEmpty, user, visibility, purpose,
+                    category);
 
-                uploaded.add(Map.of(
-                        "id", saved.getId(),
-                        "fileName", saved.getFileName()));
+            List<Map<String, Object>> uploaded = new ArrayList<>();
+            int succeeded = 0;
+            for (FileService.UploadResult result : results) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("fileName", result.getFileName());
+                if (result.isSuccess()) {
+                    succeeded++;
+                    entry.put("id", result.getFile().getId());
+                    entry.put("status", "SUCCESS");
+                } else {
+                    entry.put("status", "FAILURE");
+                    entry.put("error", result.getError());
+                }
+                uploaded.add(entry);
             }
 
-            if (uploaded.isEmpty()) {
-                return ResponseEntity.badRequest().body("All provided files were empty");
+            if (succeeded == 0) {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                        "message", "Could not upload the file(s)",
+                        "count", 0,
+                        "failed", uploaded.size(),
+                        "files", uploaded));
             }
 
             return ResponseEntity.ok(Map.of(
-                    "message", "File(s) uploaded successfully",
-                    "count", uploaded.size(),
+                    "message", succeeded == uploaded.size()
+                            ? "File(s) uploaded successfully"
+                            : "Some files could not be uploaded",
+                    "count", succeeded,
+                    "failed", uploaded.size() - succeeded,
                     "files", uploaded));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -72,6 +101,89 @@ public class FileController {
         }
     }
 
+    // Resumable upload: init, PUT raw chunks at the acknowledged offset, then complete.
+    // A dropped connection only loses the segment in flight; GET the upload to find where to resume.
+
+    @PostMapping("/uploads")
+    @PreAuthorize("hasAuthority('ROLE_USER')")
+    public ResponseEntity<?> initUpload(
+            @RequestParam("fileName") String fileName,
+            @RequestParam("size") long size,
+            @RequestParam(value = "contentType", required = false) String contentType,
+            @RequestParam(value = "visibility", required = false) VisibilityType visibility,
+            @RequestParam(value = "purpose", required = false) String purpose,
+            @RequestParam(value = "category", required = false) String category) {
+        try {
+            User user = getCurrentUser();
+            UploadSession session = resumableUploadService.initUpload(user, fileName, size, contentType, visibility,
+                    purpose, category);
+            return ResponseEntity.status(HttpStatus.CREATED).body(uploadStatus(session));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Could not start the upload: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/uploads/{uploadId}")
+    @PreAuthorize("hasAuthority('ROLE_USER')")
+    public ResponseEntity<?> getUpload(@PathVariable Long uploadId) {
+        try {
+            User user = getCurrentUser();
+            return ResponseEntity.ok(uploadStatus(resumableUploadService.getUpload(uploadId, user)));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
+    @PutMapping(value = "/uploads/{uploadId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @PreAuthorize("hasAuthority('ROLE_USER')")
+    public ResponseEntity<?> uploadChunk(@PathVariable Long uploadId,
+            @RequestParam("offset") long offset,
+            InputStream body) {
+        try {
+            User user = getCurrentUser();
+            UploadSession session = resumableUploadService.appendChunk(uploadId, user, offset, body);
+            return ResponseEntity.ok(uploadStatus(session));
+        } catch (ResumableUploadService.OffsetMismatchException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                    "message", e.getMessage(),
+                    "receivedBytes", e.getExpectedOffset()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Could not store the chunk: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/uploads/{uploadId}/complete")
+    @PreAuthorize("hasAuthority('ROLE_USER')")
+    public ResponseEntity<?> completeUpload(@PathVariable Long uploadId) {
+        try {
+            User user = getCurrentUser();
+            FileEntity saved = resumableUploadService.completeUpload(uploadId, user);
+            return ResponseEntity.ok(Map.of(
+                    "message", "File uploaded successfully",
+                    "id", saved.getId(),
+                    "fileName", saved.getFileName()));
+        } catch (ResumableUploadService.OffsetMismatchException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                    "message", "Upload is incomplete",
+                    "receivedBytes", e.getExpectedOffset()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Could not complete the upload: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/uploads/{uploadId}")
+    @PreAuthorize("hasAuthority('ROLE_USER')")
+    public ResponseEntity<?> abortUpload(@PathVariable Long uploadId) {
+        try {
+            User user = getCurrentUser();
+            resumableUploadService.abortUpload(uploadId, user);
+            return ResponseEntity.ok(Map.of("message", "Upload cancelled", "uploadId", uploadId));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
     @GetMapping("/list")
     @PreAuthorize("hasAuthority('ROLE_USER') or hasAuthority('ROLE_ADMIN')")
     public ResponseEntity<List<FileMetadataDto>> getListFiles() {
@@ -81,23 +193,18 @@ public class FileController {
 
     @GetMapping("/download/{id}")
     @PreAuthorize("hasAuthority('ROLE_USER') or hasAuthority('ROLE_ADMIN')")
-    public ResponseEntity<?> downloadFile(@PathVariable Long id) {
+    public ResponseEntity<?> downloadFile(@PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
         try {
             if (id == null) {
                 return ResponseEntity.badRequest().body("id is required");
             }
             User user = getCurrentUser();
-            byte[] data = fileService.downloadFile(id, user);
-            FileEntity fileInfo = fileService.getFile(id);
-
-            byte[] safeData = Objects.requireNonNull(data, "downloaded data");
-            ByteArrayResource resource = new ByteArrayResource(safeData);
+            FileEntity fileInfo = fileService.prepareDownload(id, user);
 
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileInfo.getFileName() + "\"")
-                    .contentType(Objects.requireNonNull(MediaType.APPLICATION_OCTET_STREAM))
-                    .contentLength(safeData.length)
-                    .body(resource);
+            // Decrypt straight into the response; only the segments covering the range are read.
+            return FileDownloadResponses.stream(fileService, fileInfo, range,
+                    Objects.requireNonNull(MediaType.APPLICATION_OCTET_STREAM));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
         }
@@ -128,15 +235,18 @@ public class FileController {
         }
     }
 
+    private Map<String, Object> uploadStatus(UploadSession session) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("uploadId", session.getId());
+        status.put("fileName", session.getFileName());
+        status.put("size", session.getTotalSize());
+        status.put("receivedBytes", session.getReceivedBytes());
+        status.put("chunkSize", ResumableUploadService.RECOMMENDED_CHUNK_SIZE);
+        status.put("complete", session.getReceivedBytes() == session.getTotalSize());
+        return status;
+    }
+
     private User getCurrentUser() {
-        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        String username;
-        if (principal instanceof UserDetails) {
-            username = ((UserDetails) principal).getUsername();
-        } else {
-            username = principal.toString();
-        }
-        return userRepository.findByUsername(username)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        return currentUserResolver.getCurrentUser();
     }
 }
@@ -0,0 +1,81 @@
+package com.securefilesharing.controller;
+
+import com.securefilesharing.entity.FileEntity;
+import com.securefilesharing.service.FileService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Builds streaming download responses, honouring a single-range {@code Range}
+ * header with 206 Partial Content. Shared by the user and admin download
+ * endpoints. The download is audited only once the range has been accepted,
+ * so a 416 response is never logged as a download.
+ */
+final class FileDownloadResponses {
+
+    private FileDownloadResponses() {
+    }
+
+    static ResponseEntity<?> stream(FileService fileService, FileEntity file, String rangeHeader,
+            MediaType contentType) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getFileName() + "\"");
+        headers.setContentType(contentType);
+
+        Long length = fileService.getPlaintextLength(file);
+        if (length == null) {
+            // Size unknown (very old uploads): serve the whole file without range support.
+            fileService.recordDownload(file, null);
+            StreamingResponseBody body = out -> fileService.writeDecrypted(file, out);
+            return ResponseEntity.ok().headers(headers).body(body);
+        }
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            return rangeNotSatisfiable(length);
+        }
+
+        // Multi-range requests are answered with the full content, which RFC 9110 allows.
+        if (ranges.size() != 1) {
+            headers.setContentLength(length);
+            fileService.recordDownload(file, null);
+            StreamingResponseBody body = out -> fileService.writeDecrypted(file, out);
+            return ResponseEntity.ok().headers(headers).body(body);
+        }
+
+        long start;
+        long end;
+        try {
+            start = ranges.get(0).getRangeStart(length);
+            end = ranges.get(0).getRangeEnd(length);
+        } catch (IllegalArgumentException e) {
+            return rangeNotSatisfiable(length);
+        }
+        if (length == 0 || start >= length || end < start) {
+            return rangeNotSatisfiable(length);
+        }
+
+        String contentRange = "bytes " + start + "-" + end + "/" + length;
+        headers.set(HttpHeaders.CONTENT_RANGE, contentRange);
+        headers.setContentLength(end - start + 1);
+        fileService.recordDownload(file, "range " + contentRange);
+        StreamingResponseBody body = out -> fileService.writeDecrypted(file, start, end, out);
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).body(body);
+    }
+
+    private static ResponseEntity<?> rangeNotSatisfiable(long length) {
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                .build();
+    }
+}
@@ -0,0 +1,61 @@
+package com.securefilesharing.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+// Audit journal segment already bulk-loaded into audit_logs; written in the same transaction as its rows.
+// Carries the load's per-minute counts for the change feed of the other nodes.
+// Pruned after app.audit.journal.load-record-retention-hours.
+@Entity
+@Table(name = "audit_journal_loads", indexes = {
+    @Index(name = "idx_journal_load_loaded_at", columnList = "loadedAt")
+})
+public class AuditJournalLoad {
+
+    @Id
+    @Column(length = 64)
+    private String segmentName;
+
+    @Column(nullable = false)
+    private int entryCount;
+
+    @Column(nullable = false)
+    private Instant loadedAt;
+
+    // JSON [[epochMinute, dimension, value, count], ...]; null for loads recorded before it was added
+    @Column(columnDefinition = "MEDIUMTEXT", nullable = true)
+    private String changes;
+
+    public String getSegmentName() {
+        return segmentName;
+    }
+
+    public void setSegmentName(String segmentName) {
+        this.segmentName = segmentName;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public void setEntryCount(int entryCount) {
+        this.entryCount = entryCount;
+    }
+
+    public Instant getLoadedAt() {
+        return loadedAt;
+    }
+
+    public void setLoadedAt(Instant loadedAt) {
+        this.loadedAt = loadedAt;
+    }
+
+    public String getChanges() {
+        return changes;
+    }
+
+    public void setChanges(String changes) {
+        this.changes = changes;
+    }
+}
@@ -15,6 +15,11 @@ import java.time.LocalDateTime;
 })
 public class AuditLog {
 
+    // Column sizes; the audit journal clamps entries to them so an oversized value cannot fail an insert
+    public static final int STRING_LENGTH = 255;
+    public static final int FILE_NAME_LENGTH = 512;
+    public static final int DETAILS_LENGTH = 16383; // TEXT holds 65535 bytes, 4 per utf8mb4 character
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -40,7 +45,7 @@ public class AuditLog {
     private Long resourceId;
 
     // File name for file-related actions (for display without joins)
-    @Column(nullable = true, length = 512)
+    @Column(nullable = true, length = FILE_NAME_LENGTH)
     private String fileName;
 
     @Column(nullable = false)
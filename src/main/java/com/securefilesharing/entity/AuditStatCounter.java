@@ -0,0 +1,31 @@
+package com.securefilesharing.entity;
+
+import jakarta.persistence.*;
+
+// Number of audit_logs rows per hour and per action / status / resource type; kept in step by the journal loader
+@Entity
+@Table(name = "audit_stat_counters")
+public class AuditStatCounter {
+
+    @EmbeddedId
+    private AuditStatCounterId id;
+
+    @Column(nullable = false)
+    private long entryCount;
+
+    public AuditStatCounterId getId() {
+        return id;
+    }
+
+    public void setId(AuditStatCounterId id) {
+        this.id = id;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public void setEntryCount(long entryCount) {
+        this.entryCount = entryCount;
+    }
+}
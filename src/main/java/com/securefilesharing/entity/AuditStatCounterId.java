@@ -0,0 +1,62 @@
+package com.securefilesharing.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+@Embeddable
+public class AuditStatCounterId implements Serializable {
+
+    // Start of the hour the counted entries were logged in
+    @Column(nullable = false)
+    private LocalDateTime bucketHour;
+
+    // total, action, status, resource_type or user
+    @Column(nullable = false, length = 32)
+    private String dimension;
+
+    // Empty for the total and for entries without a value
+    @Column(nullable = false)
+    private String dimensionValue;
+
+    public LocalDateTime getBucketHour() {
+        return bucketHour;
+    }
+
+    public void setBucketHour(LocalDateTime bucketHour) {
+        this.bucketHour = bucketHour;
+    }
+
+    public String getDimension() {
+        return dimension;
+    }
+
+    public void setDimension(String dimension) {
+        this.dimension = dimension;
+    }
+
+    public String getDimensionValue() {
+        return dimensionValue;
+    }
+
+    public void setDimensionValue(String dimensionValue) {
+        this.dimensionValue = dimensionValue;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AuditStatCounterId other)) return false;
+        return Objects.equals(bucketHour, other.bucketHour)
+                && Objects.equals(dimension, other.dimension)
+                && Objects.equals(dimensionValue, other.dimensionValue);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(bucketHour, dimension, dimensionValue);
+    }
+}
@@ -0,0 +1,81 @@
+package com.securefilesharing.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+// Encrypted content stored once per distinct plaintext; FileEntity rows with the same content share it
+@Entity
+@Table(name = "file_blobs")
+public class FileBlob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Hex HMAC-SHA256 of the plaintext under the server's dedup key (see CryptoEngine); unlike a plain
+    // hash it cannot be matched against known files
+    @Column(nullable = false, unique = true, length = 64)
+    private String contentMac;
+
+    @Column(nullable = false)
+    private String storagePath;
+
+    @Column(nullable = false)
+    private long sizeBytes;
+
+    // Number of FileEntity rows pointing at this blob; the content is deleted when it drops to zero
+    @Column(nullable = false)
+    private int refCount;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getContentMac() {
+        return contentMac;
+    }
+
+    public void setContentMac(String contentMac) {
+        this.contentMac = contentMac;
+    }
+
+    public String getStoragePath() {
+        return storagePath;
+    }
+
+    public void setStoragePath(String storagePath) {
+        this.storagePath = storagePath;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public void setSizeBytes(long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(int refCount) {
+        this.refCount = refCount;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -44,6 +44,19 @@ public class FileEntity {
     @Column(nullable = false)
     private boolean isDeleted = false;
 
+    // On-disk encryption format (see EncryptedFileStore.FORMAT_*); NULL for rows not yet migrated
+    @Column(nullable = true)
+    private Integer formatVersion;
+
+    // CryptoEngine key id the stored content is sealed with; NULL for rows not yet migrated
+    @Column(nullable = true)
+    private Integer keyId;
+
+    // Shared content this row points at; NULL for files stored before deduplication (encryptedPath is their own)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "blob_id", nullable = true)
+    private FileBlob blob;
+
     public Long getId() {
         return id;
     }
@@ -131,4 +144,28 @@ public class FileEntity {
     public void setDeleted(boolean deleted) {
         isDeleted = deleted;
     }
+
+    public Integer getFormatVersion() {
+        return formatVersion;
+    }
+
+    public void setFormatVersion(Integer formatVersion) {
+        this.formatVersion = formatVersion;
+    }
+
+    public Integer getKeyId() {
+        return keyId;
+    }
+
+    public void setKeyId(Integer keyId) {
+        this.keyId = keyId;
+    }
+
+    public FileBlob getBlob() {
+        return blob;
+    }
+
+    public void setBlob(FileBlob blob) {
+        this.blob = blob;
+    }
 }
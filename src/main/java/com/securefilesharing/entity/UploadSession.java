@@ -0,0 +1,217 @@
+package com.securefilesharing.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+// In-progress resumable upload; the FileEntity is only created when it completes
+@Entity
+@Table(name = "upload_sessions")
+public class UploadSession {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "owner_id", nullable = false)
+    private User owner;
+
+    @Column(nullable = false)
+    private String fileName;
+
+    @Column(nullable = true)
+    private String contentType;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = true)
+    private VisibilityType visibilityType;
+
+    @Column(nullable = true)
+    private String purpose;
+
+    @Column(nullable = true)
+    private String category;
+
+    @Column(nullable = false)
+    private long totalSize;
+
+    // Plaintext bytes sealed and flushed to the staging file; clients resume from here
+    @Column(nullable = false)
+    private long receivedBytes;
+
+    @Column(nullable = false)
+    private String stagingPath;
+
+    // Segmented-format parameters fixed when the upload starts
+    @Column(nullable = false)
+    private byte keyId;
+
+    @Column(nullable = false)
+    private int segmentSize;
+
+    @Column(nullable = false, length = 8)
+    private byte[] noncePrefix;
+
+    // Offset of a chunk being sealed, committed before its first segment; cleared when its progress is
+    // recorded. Still set means segments past receivedBytes may have used their nonces already.
+    @Column(nullable = true)
+    private Long sealingFrom;
+
+    // Write lease: only the request holding writerToken may change the staging file or the session
+    @Column(nullable = true, length = 36)
+    private String writerToken;
+
+    @Column(nullable = true)
+    private Instant leaseUntil;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    @Column(nullable = false)
+    private Instant updatedAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public User getOwner() {
+        return owner;
+    }
+
+    public void setOwner(User owner) {
+        this.owner = owner;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public VisibilityType getVisibilityType() {
+        return visibilityType;
+    }
+
+    public void setVisibilityType(VisibilityType visibilityType) {
+        this.visibilityType = visibilityType;
+    }
+
+    public String getPurpose() {
+        return purpose;
+    }
+
+    public void setPurpose(String purpose) {
+        this.purpose = purpose;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public void setTotalSize(long totalSize) {
+        this.totalSize = totalSize;
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    public void setReceivedBytes(long receivedBytes) {
+        this.receivedBytes = receivedBytes;
+    }
+
+    public String getStagingPath() {
+        return stagingPath;
+    }
+
+    public void setStagingPath(String stagingPath) {
+        this.stagingPath = stagingPath;
+    }
+
+    public byte getKeyId() {
+        return keyId;
+    }
+
+    public void setKeyId(byte keyId) {
+        this.keyId = keyId;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public byte[] getNoncePrefix() {
+        return noncePrefix;
+    }
+
+    public void setNoncePrefix(byte[] noncePrefix) {
+        this.noncePrefix = noncePrefix;
+    }
+
+    public Long getSealingFrom() {
+        return sealingFrom;
+    }
+
+    public void setSealingFrom(Long sealingFrom) {
+        this.sealingFrom = sealingFrom;
+    }
+
+    public String getWriterToken() {
+        return writerToken;
+    }
+
+    public void setWriterToken(String writerToken) {
+        this.writerToken = writerToken;
+    }
+
+    public Instant getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public void setLeaseUntil(Instant leaseUntil) {
+        this.leaseUntil = leaseUntil;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
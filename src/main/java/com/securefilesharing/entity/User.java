@@ -2,6 +2,8 @@ package com.securefilesharing.entity;
 
 import jakarta.persistence.*;
 
+import java.time.Instant;
+
 @Entity
 @Table(name = "users")
 public class User {
@@ -31,6 +33,15 @@ public class User {
     @Column(nullable = false)
     private String status = "PENDING";
 
+    // Embedded in issued JWTs; bumped to invalidate them when the role or status changes.
+    // Nullable for existing rows; NULL is treated as 0.
+    @Column(nullable = true)
+    private Integer tokenVersion = 0;
+
+    // When tokenVersion last changed; lets other instances pick up revocations incrementally
+    @Column(nullable = true)
+    private Instant tokenVersionChangedAt;
+
     public Long getId() {
         return id;
     }
@@ -86,4 +97,20 @@ public class User {
     public void setStatus(String status) {
         this.status = status;
     }
+
+    public int getTokenVersion() {
+        return tokenVersion == null ? 0 : tokenVersion;
+    }
+
+    public void setTokenVersion(int tokenVersion) {
+        this.tokenVersion = tokenVersion;
+    }
+
+    public Instant getTokenVersionChangedAt() {
+        return tokenVersionChangedAt;
+    }
+
+    public void setTokenVersionChangedAt(Instant tokenVersionChangedAt) {
+        this.tokenVersionChangedAt = tokenVersionChangedAt;
+    }
 }
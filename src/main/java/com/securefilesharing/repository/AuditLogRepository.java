@@ -1,14 +1,19 @@
 package com.securefilesharing.repository;
 
 import com.securefilesharing.entity.AuditLog;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
 
@@ -35,15 +40,19 @@ public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
     // Find by fileName (partial match)
     Page<AuditLog> findByFileNameContainingIgnoreCase(String fileName, Pageable pageable);
 
-    // Advanced paginated search with all filters including username and fileName
+    // Advanced paginated search with all filters including username and fileName.
+    // The *Match parameters are FULLTEXT phrases (see AuditTextSearch) that narrow the LIKE through the
+    // ngram index; pass null to search with LIKE alone. The same applies to the queries below.
     @Query("""
             SELECT a FROM AuditLog a
             WHERE (:userId IS NULL OR a.userId = :userId)
-              AND (:username IS NULL OR LOWER(a.username) LIKE LOWER(CONCAT('%', :username, '%')))
+              AND (:username IS NULL OR ((:usernameMatch IS NULL OR ngram_match(a.username, :usernameMatch) > 0)
+                   AND LOWER(a.username) LIKE LOWER(CONCAT('%', :username, '%'))))
               AND (:action IS NULL OR a.action = :action)
               AND (:status IS NULL OR a.status = :status)
               AND (:resourceType IS NULL OR a.resourceType = :resourceType)
-              AND (:fileName IS NULL OR LOWER(a.fileName) LIKE LOWER(CONCAT('%', :fileName, '%')))
+              AND (:fileName IS NULL OR ((:fileNameMatch IS NULL OR ngram_match(a.fileName, :fileNameMatch) > 0)
+                   AND LOWER(a.fileName) LIKE LOWER(CONCAT('%', :fileName, '%'))))
               AND (:startDate IS NULL OR a.timestamp >= :startDate)
               AND (:endDate IS NULL OR a.timestamp <= :endDate)
             ORDER BY a.timestamp DESC
@@ -51,15 +60,97 @@ public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
     Page<AuditLog> searchLogsAdvanced(
             @Param("userId") Long userId,
             @Param("username") String username,
+            @Param("usernameMatch") String usernameMatch,
             @Param("action") String action,
             @Param("status") String status,
             @Param("resourceType") String resourceType,
             @Param("fileName") String fileName,
+            @Param("fileNameMatch") String fileNameMatch,
             @Param("startDate") LocalDateTime startDate,
             @Param("endDate") LocalDateTime endDate,
             Pageable pageable
     );
 
+    // Keyset page for the auditor UI: rows strictly after the (afterTs, afterId) cursor, newest first.
+    // Walks idx_audit_timestamp (InnoDB appends the id) instead of skipping OFFSET rows; no count query.
+    @Query("""
+            SELECT a FROM AuditLog a
+            WHERE (:afterTs IS NULL OR a.timestamp < :afterTs OR (a.timestamp = :afterTs AND a.id < :afterId))
+              AND (:username IS NULL OR ((:usernameMatch IS NULL OR ngram_match(a.username, :usernameMatch) > 0)
+                   AND LOWER(a.username) LIKE LOWER(CONCAT('%', :username, '%'))))
+              AND (:action IS NULL OR a.action = :action)
+              AND (:status IS NULL OR a.status = :status)
+              AND (:fileName IS NULL OR ((:fileNameMatch IS NULL OR ngram_match(a.fileName, :fileNameMatch) > 0)
+                   AND LOWER(a.fileName) LIKE LOWER(CONCAT('%', :fileName, '%'))))
+              AND (:startDate IS NULL OR a.timestamp >= :startDate)
+              AND (:endDate IS NULL OR a.timestamp <= :endDate)
+            ORDER BY a.timestamp DESC, a.id DESC
+            """)
+    Slice<AuditLog> findLogsAfter(
+            @Param("afterTs") LocalDateTime afterTs,
+            @Param("afterId") Long afterId,
+            @Param("username") String username,
+            @Param("usernameMatch") String usernameMatch,
+            @Param("action") String action,
+            @Param("status") String status,
+            @Param("fileName") String fileName,
+            @Param("fileNameMatch") String fileNameMatch,
+            @Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate,
+            Pageable pageable
+    );
+
+    // Total for findLogsAfter, only computed when the client asks for it
+    @Query("""
+            SELECT COUNT(a) FROM AuditLog a
+            WHERE (:username IS NULL OR ((:usernameMatch IS NULL OR ngram_match(a.username, :usernameMatch) > 0)
+                   AND LOWER(a.username) LIKE LOWER(CONCAT('%', :username, '%'))))
+              AND (:action IS NULL OR a.action = :action)
+              AND (:status IS NULL OR a.status = :status)
+              AND (:fileName IS NULL OR ((:fileNameMatch IS NULL OR ngram_match(a.fileName, :fileNameMatch) > 0)
+                   AND LOWER(a.fileName) LIKE LOWER(CONCAT('%', :fileName, '%'))))
+              AND (:startDate IS NULL OR a.timestamp >= :startDate)
+              AND (:endDate IS NULL OR a.timestamp <= :endDate)
+            """)
+    long countLogs(
+            @Param("username") String username,
+            @Param("usernameMatch") String usernameMatch,
+            @Param("action") String action,
+            @Param("status") String status,
+            @Param("fileName") String fileName,
+            @Param("fileNameMatch") String fileNameMatch,
+            @Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate
+    );
+
+    // Same filters as searchLogsAdvanced, streamed row by row for exports (MySQL streams with fetch size MIN_VALUE)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            SELECT a FROM AuditLog a
+            WHERE (:username IS NULL OR ((:usernameMatch IS NULL OR ngram_match(a.username, :usernameMatch) > 0)
+                   AND LOWER(a.username) LIKE LOWER(CONCAT('%', :username, '%'))))
+              AND (:action IS NULL OR a.action = :action)
+              AND (:status IS NULL OR a.status = :status)
+              AND (:fileName IS NULL OR ((:fileNameMatch IS NULL OR ngram_match(a.fileName, :fileNameMatch) > 0)
+                   AND LOWER(a.fileName) LIKE LOWER(CONCAT('%', :fileName, '%'))))
+              AND (:startDate IS NULL OR a.timestamp >= :startDate)
+              AND (:endDate IS NULL OR a.timestamp <= :endDate)
+            ORDER BY a.timestamp DESC
+            """)
+    Stream<AuditLog> streamLogsAdvanced(
+            @Param("username") String username,
+            @Param("usernameMatch") String usernameMatch,
+            @Param("action") String action,
+            @Param("status") String status,
+            @Param("fileName") String fileName,
+            @Param("fileNameMatch") String fileNameMatch,
+            @Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate
+    );
+
     // Original paginated search with multiple filters (kept for backward compatibility)
     @Query("""
             SELECT a FROM AuditLog a
@@ -101,6 +192,41 @@ public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
             @Param("toTs") LocalDateTime toTs
     );
 
+    // Streaming variant of search for exports
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            SELECT a FROM AuditLog a
+            WHERE (:actorUserId IS NULL OR a.userId = :actorUserId)
+              AND (:fileId IS NULL OR a.fileId = :fileId)
+              AND (:fileOwnerId IS NULL OR a.fileOwnerId = :fileOwnerId)
+              AND (:action IS NULL OR a.action = :action)
+              AND (:fromTs IS NULL OR a.timestamp >= :fromTs)
+              AND (:toTs IS NULL OR a.timestamp <= :toTs)
+            ORDER BY a.timestamp DESC
+            """)
+    Stream<AuditLog> streamSearch(
+            @Param("actorUserId") Long actorUserId,
+            @Param("fileId") Long fileId,
+            @Param("fileOwnerId") Long fileOwnerId,
+            @Param("action") String action,
+            @Param("fromTs") LocalDateTime fromTs,
+            @Param("toTs") LocalDateTime toTs
+    );
+
+    // One day being moved to the archive, streamed in (timestamp, id) order straight off idx_audit_timestamp
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT a FROM AuditLog a WHERE a.timestamp >= :fromTs AND a.timestamp < :toTs ORDER BY a.timestamp, a.id")
+    Stream<AuditLog> streamForArchive(@Param("fromTs") LocalDateTime fromTs, @Param("toTs") LocalDateTime toTs);
+
+    @Query("SELECT MIN(a.timestamp) FROM AuditLog a")
+    LocalDateTime findOldestTimestamp();
+
     // Count by status for dashboard
     long countByStatus(String status);
 
@@ -0,0 +1,30 @@
+package com.securefilesharing.repository;
+
+import com.securefilesharing.entity.FileBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+public interface FileBlobRepository extends JpaRepository<FileBlob, Long> {
+    Optional<FileBlob> findByContentMac(String contentMac);
+
+    // Only succeeds while the blob is still referenced, so a blob being released is never revived
+    @Modifying
+    @Transactional
+    @Query("update FileBlob b set b.refCount = b.refCount + 1 where b.id = :id and b.refCount > 0")
+    int acquireReference(@Param("id") Long id);
+
+    @Modifying
+    @Transactional
+    @Query("update FileBlob b set b.refCount = b.refCount - 1 where b.id = :id and b.refCount > 0")
+    int releaseReference(@Param("id") Long id);
+
+    @Modifying
+    @Transactional
+    @Query("delete from FileBlob b where b.id = :id and b.refCount = 0")
+    int deleteIfUnreferenced(@Param("id") Long id);
+}
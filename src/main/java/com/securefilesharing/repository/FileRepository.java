@@ -3,10 +3,12 @@ package com.securefilesharing.repository;
 import com.securefilesharing.entity.FileEntity;
 import com.securefilesharing.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -20,4 +22,14 @@ public interface FileRepository extends JpaRepository<FileEntity, Long> {
     Page<FileEntity> searchByFileName(@Param("q") String q, Pageable pageable);
 
     long countByIsDeletedFalse();
+
+    // Files whose stored content predates the given format version or is sealed with another key, in id order for batched migration
+    @Query("select f from FileEntity f where f.id > :afterId and (f.formatVersion is null or f.formatVersion < :version or f.keyId is null or f.keyId <> :keyId) order by f.id")
+    List<FileEntity> findNeedingMigration(@Param("afterId") Long afterId, @Param("version") Integer version,
+            @Param("keyId") Integer keyId, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("update FileEntity f set f.formatVersion = :version, f.keyId = :keyId where f.id = :id")
+    int updateStoredFormat(@Param("id") Long id, @Param("version") Integer version, @Param("keyId") Integer keyId);
 }
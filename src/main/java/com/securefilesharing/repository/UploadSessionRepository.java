@@ -0,0 +1,48 @@
+package com.securefilesharing.repository;
+
+import com.securefilesharing.entity.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, Long> {
+    List<UploadSession> findByUpdatedAtBefore(Instant cutoff);
+
+    // Takes the write lease when it is free or has run out; clears the context so the session is re-read
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update UploadSession u set u.writerToken = :token, u.leaseUntil = :leaseUntil "
+            + "where u.id = :id and (u.writerToken is null or u.leaseUntil < :now)")
+    int acquireLease(@Param("id") Long id, @Param("token") String token, @Param("leaseUntil") Instant leaseUntil,
+            @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("update UploadSession u set u.writerToken = null, u.leaseUntil = null where u.id = :id and u.writerToken = :token")
+    int releaseLease(@Param("id") Long id, @Param("token") String token);
+
+    @Modifying
+    @Transactional
+    @Query("update UploadSession u set u.sealingFrom = :offset where u.id = :id and u.writerToken = :token")
+    int markSealing(@Param("id") Long id, @Param("offset") long offset, @Param("token") String token);
+
+    @Modifying
+    @Transactional
+    @Query("update UploadSession u set u.receivedBytes = :receivedBytes, u.sealingFrom = null, u.updatedAt = :updatedAt "
+            + "where u.id = :id and u.writerToken = :token")
+    int updateReceivedBytes(@Param("id") Long id, @Param("receivedBytes") long receivedBytes,
+            @Param("updatedAt") Instant updatedAt, @Param("token") String token);
+
+    @Modifying
+    @Transactional
+    @Query("update UploadSession u set u.stagingPath = :stagingPath, u.keyId = :keyId, u.noncePrefix = :noncePrefix, "
+            + "u.sealingFrom = null, u.updatedAt = :updatedAt where u.id = :id and u.writerToken = :token")
+    int updateStaging(@Param("id") Long id, @Param("stagingPath") String stagingPath, @Param("keyId") byte keyId,
+            @Param("noncePrefix") byte[] noncePrefix, @Param("updatedAt") Instant updatedAt,
+            @Param("token") String token);
+}
@@ -4,8 +4,11 @@ import com.securefilesharing.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -28,4 +31,22 @@ public interface UserRepository extends JpaRepository<User, Long> {
     long countByStatus(String status);
 
     List<User> findByStatus(String status);
+
+    @Query("select coalesce(u.tokenVersion, 0) from User u where u.id = :id")
+    Optional<Integer> findTokenVersionById(@Param("id") Long id);
+
+    // Rows of [id, tokenVersion]
+    @Query("select u.id, coalesce(u.tokenVersion, 0) from User u")
+    List<Object[]> findAllTokenVersions();
+
+    // Rows of [id, tokenVersion] for users whose version changed at or after the given instant
+    @Query("select u.id, coalesce(u.tokenVersion, 0) from User u where u.tokenVersionChangedAt >= :since")
+    List<Object[]> findTokenVersionsChangedSince(@Param("since") Instant since);
+
+    // roles are upper-case spellings of one role as stored in users.role ('' stands for an unset role)
+    @Modifying
+    @Transactional
+    @Query("update User u set u.tokenVersion = coalesce(u.tokenVersion, 0) + 1, u.tokenVersionChangedAt = :now "
+            + "where upper(trim(coalesce(u.role, ''))) in :roles")
+    int bumpTokenVersionsByRole(@Param("roles") Collection<String> roles, @Param("now") Instant now);
 }
@@ -0,0 +1,32 @@
+package com.securefilesharing.security;
+
+import com.securefilesharing.service.audit.AuditContext;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Captures the {@link AuditContext} of a request once, right after the JWT
+ * filter has authenticated it, and binds it to the request thread.
+ */
+public class AuditContextFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                    @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain)
+            throws ServletException, IOException {
+        AuditContext.bind(AuditContext.capture(request, SecurityContextHolder.getContext().getAuthentication()));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            AuditContext.clear();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.securefilesharing.security;
 import com.securefilesharing.security.jwt.AuthEntryPointJwt;
 import com.securefilesharing.security.jwt.AuthTokenFilter;
 import com.securefilesharing.security.services.UserDetailsServiceImpl;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -31,6 +32,11 @@ public class WebSecurityConfig {
         return new AuthTokenFilter();
     }
 
+    @Bean
+    public AuditContextFilter auditContextFilter() {
+        return new AuditContextFilter();
+    }
+
     @Bean
     @SuppressWarnings("deprecation")
     public DaoAuthenticationProvider authenticationProvider() {
@@ -58,6 +64,9 @@ public class WebSecurityConfig {
                 .exceptionHandling(exception -> exception.authenticationEntryPoint(unauthorizedHandler))
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(auth -> auth
+                // Streaming responses finish on an ASYNC dispatch; the original request was already authorized
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                 // Public API endpoints
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/api/test/**").permitAll()
@@ -101,6 +110,7 @@ public class WebSecurityConfig {
                 .policyDirectives("script-src 'self' 'unsafe-inline'; object-src 'none'; base-uri 'self'")));
 
         http.addFilterBefore(authenticationJwtTokenFilter(), UsernamePasswordAuthenticationFilter.class);
+        http.addFilterAfter(auditContextFilter(), AuthTokenFilter.class);
 
         return http.build();
     }
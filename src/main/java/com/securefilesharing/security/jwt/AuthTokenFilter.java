@@ -1,6 +1,10 @@
 package com.securefilesharing.security.jwt;
 
+import com.securefilesharing.security.services.TokenVersionCache;
+import com.securefilesharing.security.services.UserDetailsImpl;
 import com.securefilesharing.security.services.UserDetailsServiceImpl;
+import com.securefilesharing.security.services.UserLookupMetrics;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -24,6 +28,12 @@ public class AuthTokenFilter extends OncePerRequestFilter {
     @Autowired
     private UserDetailsServiceImpl userDetailsService;
 
+    @Autowired
+    private UserLookupMetrics userLookupMetrics;
+
+    @Autowired
+    private TokenVersionCache tokenVersionCache;
+
     private static final Logger logger = LoggerFactory.getLogger(AuthTokenFilter.class);
 
     @Override
@@ -31,12 +41,33 @@ public class AuthTokenFilter extends OncePerRequestFilter {
                                     @NonNull HttpServletResponse response,
                                     @NonNull FilterChain filterChain)
             throws ServletException, IOException {
+        userLookupMetrics.beginRequest();
         try {
-            String jwt = parseJwt(request);
-            if (jwt != null && jwtUtils.validateJwtToken(jwt)) {
-                String username = jwtUtils.getUserNameFromJwtToken(jwt);
+            authenticate(request);
+            filterChain.doFilter(request, response);
+        } finally {
+            userLookupMetrics.endRequest(request.getRequestURI());
+        }
+    }
 
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+    private void authenticate(HttpServletRequest request) {
+        try {
+            String jwt = parseJwt(request);
+            // Verified once per request; hot tokens come straight from the claims cache.
+            Claims claims = jwt != null ? jwtUtils.parseVerifiedClaims(jwt) : null;
+            if (claims != null) {
+                // The token carries id, role and authorities; only its version is checked, against a cache.
+                UserDetailsImpl fromClaims = jwtUtils.getUserDetailsFromClaims(claims);
+                UserDetails userDetails;
+                if (fromClaims == null) {
+                    // Token issued before identity claims were added: resolve the user from the database.
+                    userDetails = userDetailsService.loadUserByUsername(claims.getSubject());
+                } else if (tokenVersionCache.isCurrent(fromClaims.getId(), fromClaims.getTokenVersion())) {
+                    userDetails = fromClaims;
+                } else {
+                    logger.debug("Rejected outdated token for user {}", fromClaims.getUsername());
+                    return;
+                }
                 UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
                         userDetails,
                         null,
@@ -48,8 +79,6 @@ public class AuthTokenFilter extends OncePerRequestFilter {
         } catch (Exception e) {
             logger.error("Cannot set user authentication: {}", e);
         }
-
-        filterChain.doFilter(request, response);
     }
 
     private String parseJwt(HttpServletRequest request) {
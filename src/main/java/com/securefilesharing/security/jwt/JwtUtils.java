@@ -3,54 +3,112 @@ package com.securefilesharing.security.jwt;
 import com.securefilesharing.security.services.UserDetailsImpl;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class JwtUtils {
     private static final Logger logger = LoggerFactory.getLogger(JwtUtils.class);
 
+    // Claims that let a request be authenticated without loading the user
+    private static final String CLAIM_USER_ID = "uid";
+    private static final String CLAIM_ROLE = "role";
+    private static final String CLAIM_AUTHORITIES = "auth";
+    private static final String CLAIM_TOKEN_VERSION = "tv";
+
     @Value("${app.jwtSecret}")
     private String jwtSecret;
 
     @Value("${app.jwtExpirationInMs}")
     private int jwtExpirationMs;
 
+    @Value("${app.jwt.claims-cache-size:10000}")
+    private int claimsCacheSize;
+
+    // Built once; both are immutable and thread-safe
+    private Key key;
+    private JwtParser parser;
+
+    // Recently verified token -> claims, so clients re-sending the same token skip HMAC verification.
+    // Lock-free reads; entries are only served until the token expires and are swept periodically
+    // or when the map outgrows claimsCacheSize.
+    private final ConcurrentHashMap<String, Claims> verifiedClaims = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        // Use bytes directly to avoid Base64 decoding issues with plain text secrets
+        key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parserBuilder().setSigningKey(key).build();
+    }
+
     public String generateJwtToken(Authentication authentication) {
 
         UserDetailsImpl userPrincipal = (UserDetailsImpl) authentication.getPrincipal();
 
-        return Jwts.builder()
+        JwtBuilder builder = Jwts.builder()
                 .setSubject((userPrincipal.getUsername()))
                 .setIssuedAt(new Date())
-                .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs))
-                .signWith(key(), SignatureAlgorithm.HS256)
-                .compact();
-    }
-
-    private Key key() {
-        // Use bytes directly to avoid Base64 decoding issues with plain text secrets
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+                .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs));
+        if (userPrincipal.getUser() != null) {
+            builder.claim(CLAIM_USER_ID, userPrincipal.getId())
+                    .claim(CLAIM_ROLE, userPrincipal.getUser().getRole())
+                    .claim(CLAIM_AUTHORITIES, userPrincipal.getAuthorities().stream()
+                            .map(GrantedAuthority::getAuthority)
+                            .toList())
+                    .claim(CLAIM_TOKEN_VERSION, userPrincipal.getTokenVersion());
+        }
+        return builder.signWith(key, SignatureAlgorithm.HS256).compact();
     }
 
-    public String getUserNameFromJwtToken(String token) {
-        return Jwts.parserBuilder().setSigningKey(key()).build()
-                .parseClaimsJws(token).getBody().getSubject();
-    }
+    /**
+     * Verifies {@code token} and returns its claims, or {@code null} if it is
+     * invalid or expired. A token seen recently is answered from the cache
+     * without verifying the signature again.
+     */
+    public Claims parseVerifiedClaims(String token) {
+        if (token == null || token.isEmpty()) {
+            logger.error("JWT claims string is empty");
+            return null;
+        }
+        Claims cached = verifiedClaims.get(token);
+        if (cached != null) {
+            if (!isExpired(cached)) {
+                return cached;
+            }
+            verifiedClaims.remove(token);
+            logger.error("JWT token is expired: {}", cached.getExpiration());
+            return null;
+        }
 
-    public boolean validateJwtToken(String authToken) {
         try {
-            Jwts.parserBuilder().setSigningKey(key()).build().parse(authToken);
-            return true;
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            if (claims.getExpiration() != null && claimsCacheSize > 0) {
+                // Tokens without an expiry are never cached
+                if (verifiedClaims.size() >= claimsCacheSize) {
+                    makeRoom();
+                }
+                verifiedClaims.put(token, claims);
+            }
+            return claims;
         } catch (MalformedJwtException e) {
             logger.error("Invalid JWT token: {}", e.getMessage());
+        } catch (SignatureException e) {
+            logger.error("Invalid JWT signature: {}", e.getMessage());
         } catch (ExpiredJwtException e) {
             logger.error("JWT token is expired: {}", e.getMessage());
         } catch (UnsupportedJwtException e) {
@@ -58,7 +116,55 @@ public class JwtUtils {
         } catch (IllegalArgumentException e) {
             logger.error("JWT claims string is empty: {}", e.getMessage());
         }
+        return null;
+    }
+
+    /**
+     * Principal carried by verified claims, or {@code null} for tokens issued
+     * before identity claims existed.
+     */
+    public UserDetailsImpl getUserDetailsFromClaims(Claims claims) {
+        Number userId = claims.get(CLAIM_USER_ID, Number.class);
+        Number tokenVersion = claims.get(CLAIM_TOKEN_VERSION, Number.class);
+        List<?> authorityNames = claims.get(CLAIM_AUTHORITIES, List.class);
+        if (userId == null || tokenVersion == null || authorityNames == null) {
+            return null;
+        }
+        List<GrantedAuthority> authorities = authorityNames.stream()
+                .map(name -> (GrantedAuthority) new SimpleGrantedAuthority(String.valueOf(name)))
+                .toList();
+        return UserDetailsImpl.fromTokenClaims(userId.longValue(), claims.getSubject(),
+                claims.get(CLAIM_ROLE, String.class), tokenVersion.intValue(), authorities);
+    }
+
+    public String getUserNameFromJwtToken(String token) {
+        Claims claims = parseVerifiedClaims(token);
+        return claims != null ? claims.getSubject() : null;
+    }
+
+    public boolean validateJwtToken(String authToken) {
+        return parseVerifiedClaims(authToken) != null;
+    }
+
+    /** Drops cached claims of expired tokens. */
+    @Scheduled(fixedDelayString = "${app.jwt.claims-cache-sweep-ms:60000}")
+    public void sweepExpiredClaims() {
+        verifiedClaims.values().removeIf(JwtUtils::isExpired);
+    }
+
+    // Expired entries go first; if the cache is still full, drop arbitrary entries down to 90% so the
+    // sweep is not repeated on every insert
+    private void makeRoom() {
+        sweepExpiredClaims();
+        int target = claimsCacheSize - Math.max(1, claimsCacheSize / 10);
+        Iterator<String> tokens = verifiedClaims.keySet().iterator();
+        while (verifiedClaims.size() > target && tokens.hasNext()) {
+            tokens.next();
+            tokens.remove();
+        }
+    }
 
-        return false;
+    private static boolean isExpired(Claims claims) {
+        return claims.getExpiration().getTime() <= System.currentTimeMillis();
     }
 }
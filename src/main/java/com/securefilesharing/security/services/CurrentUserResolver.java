@@ -0,0 +1,45 @@
+package com.securefilesharing.security.services;
+
+import com.securefilesharing.entity.User;
+import com.securefilesharing.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resolves the {@link User} behind the current request. The user loaded by
+ * {@link UserDetailsServiceImpl} during authentication travels on the
+ * principal, so controllers normally get it without another query.
+ */
+@Component
+public class CurrentUserResolver {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserLookupMetrics userLookupMetrics;
+
+    public User getCurrentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null) {
+            throw new RuntimeException("User not found");
+        }
+        Object principal = authentication.getPrincipal();
+        if (principal instanceof UserDetailsImpl userDetails && userDetails.getUser() != null) {
+            return userDetails.getUser();
+        }
+
+        String username;
+        if (principal instanceof UserDetails) {
+            username = ((UserDetails) principal).getUsername();
+        } else {
+            username = principal.toString();
+        }
+        userLookupMetrics.recordLookup();
+        return userRepository.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+}
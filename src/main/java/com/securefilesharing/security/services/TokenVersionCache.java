@@ -0,0 +1,135 @@
+package com.securefilesharing.security.services;
+
+import com.securefilesharing.entity.User;
+import com.securefilesharing.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * In-memory mirror of every user's token version, so JWTs are checked
+ * against revocations without a database round trip.
+ *
+ * The map is loaded in full on the first refresh and then kept current
+ * incrementally: local revocations update it immediately, and every
+ * {@code app.security.token-version.refresh-ms} the users whose version
+ * changed since the previous refresh are re-read, which also picks up
+ * revocations made by other instances. A user missing from the map (created
+ * after the last refresh) is read once on first sight.
+ */
+@Component
+public class TokenVersionCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenVersionCache.class);
+
+    // Cached "no such user", so tokens of deleted users are rejected without a query each time
+    private static final int UNKNOWN_USER = -1;
+
+    // Re-read a little before the previous refresh to cover clock skew and commits in flight
+    private static final Duration REFRESH_OVERLAP = Duration.ofSeconds(30);
+
+    private final ConcurrentHashMap<Long, Integer> versions = new ConcurrentHashMap<>();
+
+    // Created once: a capturing lambda at the call site would allocate on every miss-check
+    private final Function<Long, Integer> loader = this::loadVersion;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private volatile Instant lastRefresh;
+
+    /** Whether a token carrying {@code tokenVersion} is still current for the user. */
+    public boolean isCurrent(Long userId, int tokenVersion) {
+        if (userId == null) {
+            return false;
+        }
+        Integer current = versions.get(userId);
+        if (current == null) {
+            current = versions.computeIfAbsent(userId, loader);
+        }
+        int version = current;
+        return version != UNKNOWN_USER && version == tokenVersion;
+    }
+
+    /**
+     * Bumps the user's token version so every token issued so far is rejected.
+     * The caller saves {@code user}. The cache is updated right away; if the
+     * surrounding transaction rolls back, the entry is dropped and reloaded.
+     */
+    public void invalidateTokens(User user) {
+        int next = user.getTokenVersion() + 1;
+        user.setTokenVersion(next);
+        user.setTokenVersionChangedAt(Instant.now());
+        Long userId = user.getId();
+        versions.put(userId, next);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        versions.remove(userId);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Bumps the token version of every user whose stored role is one of
+     * {@code storedRoleNames}, so tokens carrying the role's old authorities
+     * are rejected. The cache picks the new versions up once the surrounding
+     * transaction, if any, has committed.
+     */
+    public int invalidateTokensByRole(Collection<String> storedRoleNames) {
+        int updated = userRepository.bumpTokenVersionsByRole(storedRoleNames, Instant.now());
+        if (updated == 0) {
+            return 0;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    refresh();
+                }
+            });
+        } else {
+            refresh();
+        }
+        return updated;
+    }
+
+    @Scheduled(fixedDelayString = "${app.security.token-version.refresh-ms:5000}",
+            initialDelayString = "${app.security.token-version.refresh-ms:5000}")
+    public void refresh() {
+        Instant startedAt = Instant.now();
+        try {
+            Instant since = lastRefresh;
+            List<Object[]> rows = since == null
+                    ? userRepository.findAllTokenVersions()
+                    : userRepository.findTokenVersionsChangedSince(since.minus(REFRESH_OVERLAP));
+            for (Object[] row : rows) {
+                // Versions only grow; never let a stale read undo a newer local revocation
+                versions.merge((Long) row[0], ((Number) row[1]).intValue(), Math::max);
+            }
+            lastRefresh = startedAt;
+        } catch (Exception e) {
+            logger.warn("Token version refresh failed: {}", e.getMessage());
+        }
+    }
+
+    private Integer loadVersion(Long userId) {
+        return userRepository.findTokenVersionById(userId).orElse(UNKNOWN_USER);
+    }
+}
@@ -21,6 +21,12 @@ public class UserDetailsImpl implements UserDetails {
 
     private Collection<? extends GrantedAuthority> authorities;
 
+    private int tokenVersion;
+
+    // User row loaded during authentication (or its snapshot from token claims), reused for the rest of the request
+    @JsonIgnore
+    private transient User user;
+
     public UserDetailsImpl(Long id, String username, String password, boolean active,
                            Collection<? extends GrantedAuthority> authorities) {
         this.id = id;
@@ -31,12 +37,31 @@ public class UserDetailsImpl implements UserDetails {
     }
 
     public static UserDetailsImpl build(User user, Collection<? extends GrantedAuthority> authorities) {
-        return new UserDetailsImpl(
+        UserDetailsImpl details = new UserDetailsImpl(
                 user.getId(),
                 user.getUsername(),
                 user.getPassword(),
                 user.isActive(),
                 authorities);
+        details.tokenVersion = user.getTokenVersion();
+        details.user = user;
+        return details;
+    }
+
+    /**
+     * Principal rebuilt from verified token claims without touching the
+     * database. The attached {@link User} is a detached snapshot holding only
+     * id, username, role and active flag.
+     */
+    public static UserDetailsImpl fromTokenClaims(Long id, String username, String role, int tokenVersion,
+            Collection<? extends GrantedAuthority> authorities) {
+        User snapshot = new User();
+        snapshot.setId(id);
+        snapshot.setUsername(username);
+        snapshot.setRole(role);
+        snapshot.setActive(true);
+        snapshot.setTokenVersion(tokenVersion);
+        return build(snapshot, authorities);
     }
 
     @Override
@@ -48,6 +73,14 @@ public class UserDetailsImpl implements UserDetails {
         return id;
     }
 
+    public User getUser() {
+        return user;
+    }
+
+    public int getTokenVersion() {
+        return tokenVersion;
+    }
+
     @Override
     public String getPassword() {
         return password;
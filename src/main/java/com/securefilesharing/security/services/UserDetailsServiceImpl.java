@@ -18,9 +18,13 @@ public class UserDetailsServiceImpl implements UserDetailsService {
     @Autowired
     RolePermissionService rolePermissionService;
 
+    @Autowired
+    UserLookupMetrics userLookupMetrics;
+
     @Override
     @Transactional
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        userLookupMetrics.recordLookup();
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User Not Found with username: " + username));
 
@@ -0,0 +1,71 @@
+package com.securefilesharing.security.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Counts user lookups (queries that load a {@code User} by username) per HTTP
+ * request. {@link com.securefilesharing.security.jwt.AuthTokenFilter} opens
+ * and closes the count around each request; every lookup on the request
+ * thread adds to it.
+ */
+@Component
+public class UserLookupMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserLookupMetrics.class);
+
+    private static final ThreadLocal<int[]> CURRENT = new ThreadLocal<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong requestsWithoutLookup = new AtomicLong();
+    private final AtomicLong requestsWithRepeatedLookups = new AtomicLong();
+    private final LongAccumulator maxLookupsPerRequest = new LongAccumulator(Math::max, 0);
+
+    public void beginRequest() {
+        CURRENT.set(new int[1]);
+    }
+
+    public void recordLookup() {
+        int[] count = CURRENT.get();
+        if (count != null) {
+            count[0]++;
+        }
+    }
+
+    public void endRequest(String requestUri) {
+        int[] count = CURRENT.get();
+        CURRENT.remove();
+        if (count == null) {
+            return;
+        }
+        requests.incrementAndGet();
+        lookups.addAndGet(count[0]);
+        maxLookupsPerRequest.accumulate(count[0]);
+        if (count[0] == 0) {
+            requestsWithoutLookup.incrementAndGet();
+        } else if (count[0] > 1) {
+            requestsWithRepeatedLookups.incrementAndGet();
+            logger.debug("{} user lookups for {}", count[0], requestUri);
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        long requestCount = requests.get();
+        long lookupCount = lookups.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", requestCount);
+        stats.put("lookups", lookupCount);
+        stats.put("lookupsPerRequest", requestCount == 0 ? 0.0 : (double) lookupCount / requestCount);
+        stats.put("maxLookupsPerRequest", maxLookupsPerRequest.get());
+        stats.put("requestsWithoutLookup", requestsWithoutLookup.get());
+        stats.put("requestsWithRepeatedLookups", requestsWithRepeatedLookups.get());
+        return stats;
+    }
+}
@@ -2,6 +2,8 @@ package com.securefilesharing.service;
 
 import com.securefilesharing.entity.*;
 import com.securefilesharing.repository.*;
+import com.securefilesharing.security.services.TokenVersionCache;
+import com.securefilesharing.service.audit.AuditStatistics;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -17,15 +19,18 @@ public class AdminService {
     @Autowired
     private FileRepository fileRepository;
 
-    @Autowired
-    private AuditLogRepository auditLogRepository;
-
     @Autowired
     private FileAccessRequestRepository fileAccessRequestRepository;
 
     @Autowired
     private AuditService auditService;
 
+    @Autowired
+    private TokenVersionCache tokenVersionCache;
+
+    @Autowired
+    private AuditStatistics auditStatistics;
+
     // Using FileService might be needed if logic is complex, but repository access
     // is usually fine for Admin purposes.
     // However, I need to fetch sharing count.
@@ -40,8 +45,8 @@ public class AdminService {
         // But let's stick to currently active or just all in DB. Repository count()
         // returns all.
         summary.put("totalFiles", fileRepository.count());
-        summary.put("adminFileAccessCount", auditLogRepository.countByAction(AuditService.ACTION_ADMIN_FILE_ACCESS));
-        summary.put("totalAuditLogs", auditLogRepository.count());
+        summary.put("adminFileAccessCount", auditStatistics.countByAction(AuditService.ACTION_ADMIN_FILE_ACCESS));
+        summary.put("totalAuditLogs", auditStatistics.totalCount());
         return summary;
     }
 
@@ -56,6 +61,7 @@ public class AdminService {
         user.setStatus("APPROVED");
         user.setRole(role);
         user.setActive(true); // enabled = true
+        tokenVersionCache.invalidateTokens(user);
         userRepository.save(user);
 
         auditService.logAction(
@@ -73,6 +79,7 @@ public class AdminService {
                 .orElseThrow(() -> new RuntimeException("User not found"));
         user.setStatus("REJECTED");
         user.setActive(false); // enabled = false
+        tokenVersionCache.invalidateTokens(user);
         userRepository.save(user);
 
         auditService.logAction(
@@ -94,12 +101,8 @@ public class AdminService {
                 .orElseThrow(() -> new RuntimeException("User not found"));
         String oldRole = user.getRole();
         user.setRole(newRole);
-        // "Invalidate existing JWT": Since we don't have token blacklist, we can rely
-        // on
-        // client-side logout or trust that subsequent requests will check DB/claims.
-        // If claims are used, they are valid until expiry.
-        // To force re-login, we might need to update a "tokenVersion" on user, but
-        // for this scope, updating DB is the primary mechanism.
+        // Tokens carry the role, so existing ones must stop working.
+        tokenVersionCache.invalidateTokens(user);
         userRepository.save(user);
 
         auditService.logAction(
@@ -117,6 +120,7 @@ public class AdminService {
                 .orElseThrow(() -> new RuntimeException("User not found"));
         boolean newStatus = !user.isActive();
         user.setActive(newStatus);
+        tokenVersionCache.invalidateTokens(user);
         userRepository.save(user);
 
         String action = newStatus ? AuditService.ACTION_USER_ENABLED : AuditService.ACTION_USER_DISABLED;
@@ -129,6 +133,22 @@ public class AdminService {
                 AuditService.STATUS_SUCCESS);
     }
 
+    @Transactional
+    public void revokeUserTokens(Long userId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        tokenVersionCache.invalidateTokens(user);
+        userRepository.save(user);
+
+        auditService.logAction(
+                AuditService.ACTION_PERMISSION_UPDATE,
+                AuditService.RESOURCE_USER,
+                userId,
+                null,
+                "All sessions of the user were revoked",
+                AuditService.STATUS_SUCCESS);
+    }
+
     public List<Map<String, Object>> getAllFiles() {
         // "File Name | Owner | Size | Uploaded At | Shared Count"
         // Returning Map or DTO.
@@ -3,20 +3,26 @@ package com.securefilesharing.service;
 import com.securefilesharing.entity.AuditLog;
 import com.securefilesharing.entity.User;
 import com.securefilesharing.repository.AuditLogRepository;
+import com.securefilesharing.service.audit.AuditArchiveFilter;
+import com.securefilesharing.service.audit.AuditArchiveSearch;
+import com.securefilesharing.service.audit.AuditContext;
+import com.securefilesharing.service.audit.AuditJournal;
+import com.securefilesharing.service.audit.AuditTextSearch;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
-import org.springframework.web.context.request.RequestContextHolder;
-import org.springframework.web.context.request.ServletRequestAttributes;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -61,6 +67,15 @@ public class AuditService {
     @Autowired
     private AuditLogRepository auditLogRepository;
 
+    @Autowired
+    private AuditTextSearch auditTextSearch;
+
+    @Autowired
+    private AuditArchiveSearch auditArchiveSearch;
+
+    @Autowired
+    private AuditJournal auditJournal;
+
     // ==================== PRIMARY LOGGING METHOD ====================
 
     /**
@@ -78,6 +93,19 @@ public class AuditService {
      */
     public void logAction(String actionType, String entityType, Long entityId,
             String fileName, String description, String status) {
+        // Written in the background; audit logging must not break or slow down the main flow
+        auditJournal.append(newEntry(actionType, entityType, entityId, fileName, description, status));
+    }
+
+    /**
+     * Builds an audit entry the same way as
+     * {@link #logAction(String, String, Long, String, String, String)} without
+     * saving it. User and request details come from the {@link AuditContext}
+     * of the calling thread, so call this on the request thread and save the
+     * entries with {@link #logAll(List)}.
+     */
+    public AuditLog newEntry(String actionType, String entityType, Long entityId,
+            String fileName, String description, String status) {
         AuditLog log = new AuditLog();
         log.setAction(actionType);
         log.setResourceType(entityType);
@@ -87,17 +115,26 @@ public class AuditService {
         log.setStatus(status != null ? status : STATUS_SUCCESS);
         log.setTimestamp(LocalDateTime.now());
 
-        // Extract authenticated user from SecurityContext
-        extractAndSetUserInfo(log);
-
-        // Extract IP address and User-Agent from HttpServletRequest
-        extractAndSetRequestInfo(log);
+        // User and client details captured once for the request by AuditContextFilter
+        AuditContext context = AuditContext.current();
+        log.setUserId(context.getUserId());
+        log.setUsername(context.getUsername());
+        log.setRole(context.getRole());
+        log.setIpAddress(context.getIpAddress());
+        log.setUserAgent(context.getUserAgent());
+        return log;
+    }
 
-        try {
-            auditLogRepository.save(log);
-        } catch (Exception e) {
-            // Audit logging must not break main application flow
-            System.err.println("Audit log save failed: " + e.getMessage());
+    /**
+     * Journals several audit entries; they land in the same journal segment
+     * and are loaded together.
+     */
+    public void logAll(List<AuditLog> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+        for (AuditLog entry : entries) {
+            auditJournal.append(entry);
         }
     }
 
@@ -165,13 +202,11 @@ public class AuditService {
             log.setResourceType(RESOURCE_SYSTEM);
         }
 
-        extractAndSetRequestInfo(log);
+        AuditContext context = AuditContext.current();
+        log.setIpAddress(context.getIpAddress());
+        log.setUserAgent(context.getUserAgent());
 
-        try {
-            auditLogRepository.save(log);
-        } catch (Exception e) {
-            System.err.println("Audit log save failed: " + e.getMessage());
-        }
+        auditJournal.append(log);
     }
 
     /**
@@ -208,15 +243,11 @@ public class AuditService {
 
         // Extract IP and User-Agent from request
         if (request != null) {
-            log.setIpAddress(getClientIp(request));
+            log.setIpAddress(AuditContext.clientIp(request));
             log.setUserAgent(request.getHeader("User-Agent"));
         }
 
-        try {
-            auditLogRepository.save(log);
-        } catch (Exception e) {
-            System.err.println("Audit log save failed: " + e.getMessage());
-        }
+        auditJournal.append(log);
     }
 
     /**
@@ -239,17 +270,13 @@ public class AuditService {
         log.setDetails(details);
         log.setTimestamp(LocalDateTime.now());
 
-        try {
-            auditLogRepository.save(log);
-        } catch (Exception e) {
-            System.err.println("Audit log save failed: " + e.getMessage());
-        }
+        auditJournal.append(log);
     }
 
     /**
-     * Async logging (fire and forget).
+     * Kept for callers of the former {@code @Async} variant; {@link #logAction}
+     * itself no longer waits for the database.
      */
-    @Async
     public void logActionAsync(String actionType, String entityType, Long entityId,
             String fileName, String description, String status) {
         logAction(actionType, entityType, entityId, fileName, description, status);
@@ -275,86 +302,103 @@ public class AuditService {
             LocalDateTime startDate,
             LocalDateTime endDate,
             Pageable pageable) {
-        return auditLogRepository.searchLogsAdvanced(userId, username, action, status,
-                resourceType, fileName, startDate, endDate, pageable);
-    }
-
-    public AuditLog getLogById(Long id) {
-        return auditLogRepository.findById(id).orElse(null);
+        return searchLogsPaginated(userId, username, action, status, resourceType, fileName, startDate, endDate,
+                pageable, false);
     }
 
     /**
-     * Legacy search method for backward compatibility.
+     * Paginated search, newest first. With includeArchived the results continue
+     * past audit_logs into the archived days (see AuditArchiveSearch); the
+     * archives are not touched when startDate lies inside the hot window.
      */
-    public List<AuditLog> searchLogs(Long actorUserId, Long fileId, Long fileOwnerId, String action,
-            LocalDateTime from, LocalDateTime to) {
-        return auditLogRepository.search(actorUserId, fileId, fileOwnerId, action, from, to);
-    }
+    public Page<AuditLog> searchLogsPaginated(
+            Long userId,
+            String username,
+            String action,
+            String status,
+            String resourceType,
+            String fileName,
+            LocalDateTime startDate,
+            LocalDateTime endDate,
+            Pageable pageable,
+            boolean includeArchived) {
+        Page<AuditLog> hot = auditLogRepository.searchLogsAdvanced(userId, username,
+                auditTextSearch.matchPhrase(username), action, status, resourceType, fileName,
+                auditTextSearch.matchPhrase(fileName), startDate, endDate, pageable);
+        AuditArchiveFilter filter = new AuditArchiveFilter(userId, username, action, status, resourceType,
+                fileName, startDate, endDate, null, null);
+        if (!includeArchived || !auditArchiveSearch.mayContain(filter)) {
+            return hot;
+        }
 
-    // ==================== HELPER METHODS ====================
+        long archivedTotal = auditArchiveSearch.count(filter);
+        List<AuditLog> content = new ArrayList<>(hot.getContent());
+        int missing = pageable.getPageSize() - content.size();
+        if (missing > 0 && archivedTotal > 0) {
+            long skip = Math.max(0, pageable.getOffset() - hot.getTotalElements());
+            content.addAll(auditArchiveSearch.findNewestFirst(filter, skip, missing));
+        }
+        return new PageImpl<>(content, pageable, hot.getTotalElements() + archivedTotal);
+    }
 
     /**
-     * Extract user info from SecurityContext and set on AuditLog.
-     * Uses proper authentication check to avoid "Unknown" unless truly
-     * anonymous/system.
+     * Keyset page: entries after the (afterTs, afterId) cursor, newest first.
+     * With includeArchived the page is topped up from the archived days once
+     * audit_logs has no more matching rows.
      */
-    private void extractAndSetUserInfo(AuditLog log) {
-        try {
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-
-            if (authentication != null
-                    && authentication.isAuthenticated()
-                    && !(authentication instanceof AnonymousAuthenticationToken)) {
-
-                Object principal = authentication.getPrincipal();
-                if (principal instanceof UserDetails userDetails) {
-                    log.setUsername(userDetails.getUsername());
-                    // Extract role
-                    String role = userDetails.getAuthorities().stream()
-                            .map(a -> a.getAuthority())
-                            .filter(a -> a != null && a.startsWith("ROLE_"))
-                            .findFirst()
-                            .orElse(null);
-                    log.setRole(role);
-                } else if (principal != null && !"anonymousUser".equals(principal.toString())) {
-                    log.setUsername(principal.toString());
-                }
-            }
-            // If still no username, leave as null (will show as SYSTEM for true system
-            // events)
-        } catch (Exception e) {
-            // Don't fail if security context is unavailable
+    public Slice<AuditLog> findLogsAfter(
+            LocalDateTime afterTs,
+            Long afterId,
+            String username,
+            String action,
+            String status,
+            String fileName,
+            LocalDateTime startDate,
+            LocalDateTime endDate,
+            int size,
+            boolean includeArchived) {
+        Slice<AuditLog> hot = auditLogRepository.findLogsAfter(afterTs, afterId, username,
+                auditTextSearch.matchPhrase(username), action, status, fileName,
+                auditTextSearch.matchPhrase(fileName), startDate, endDate, PageRequest.of(0, size));
+        if (!includeArchived || hot.hasNext()) {
+            return hot;
         }
+
+        List<AuditLog> content = new ArrayList<>(hot.getContent());
+        AuditLog last = content.isEmpty() ? null : content.get(content.size() - 1);
+        AuditArchiveFilter filter = new AuditArchiveFilter(null, username, action, status, null, fileName,
+                startDate, endDate, last != null ? last.getTimestamp() : afterTs,
+                last != null ? last.getId() : afterId);
+        if (!auditArchiveSearch.mayContain(filter)) {
+            return hot;
+        }
+        // One extra entry tells whether another page follows
+        List<AuditLog> older = auditArchiveSearch.findNewestFirst(filter, 0, size - content.size() + 1);
+        boolean hasNext = older.size() > size - content.size();
+        content.addAll(older.subList(0, Math.min(older.size(), size - content.size())));
+        return new SliceImpl<>(content, PageRequest.of(0, size), hasNext);
     }
 
-    /**
-     * Extract IP address and User-Agent from current HTTP request.
-     */
-    private void extractAndSetRequestInfo(AuditLog log) {
-        try {
-            ServletRequestAttributes attrs = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
-            if (attrs != null) {
-                HttpServletRequest request = attrs.getRequest();
-                log.setIpAddress(getClientIp(request));
-                log.setUserAgent(request.getHeader("User-Agent"));
-            }
-        } catch (Exception e) {
-            // Don't fail if request context is unavailable
+    public long countLogs(String username, String action, String status, String fileName,
+            LocalDateTime startDate, LocalDateTime endDate, boolean includeArchived) {
+        long count = auditLogRepository.countLogs(username, auditTextSearch.matchPhrase(username), action, status,
+                fileName, auditTextSearch.matchPhrase(fileName), startDate, endDate);
+        if (includeArchived) {
+            count += auditArchiveSearch.count(new AuditArchiveFilter(null, username, action, status, null,
+                    fileName, startDate, endDate, null, null));
         }
+        return count;
+    }
+
+    public AuditLog getLogById(Long id) {
+        return auditLogRepository.findById(id).orElse(null);
     }
 
     /**
-     * Extract client IP address with proxy support.
+     * Legacy search method for backward compatibility.
      */
-    private String getClientIp(HttpServletRequest request) {
-        String xfHeader = request.getHeader("X-Forwarded-For");
-        if (xfHeader != null && !xfHeader.isEmpty()) {
-            return xfHeader.split(",")[0].trim();
-        }
-        String xRealIp = request.getHeader("X-Real-IP");
-        if (xRealIp != null && !xRealIp.isEmpty()) {
-            return xRealIp;
-        }
-        return request.getRemoteAddr();
+    public List<AuditLog> searchLogs(Long actorUserId, Long fileId, Long fileOwnerId, String action,
+            LocalDateTime from, LocalDateTime to) {
+        return auditLogRepository.search(actorUserId, fileId, fileOwnerId, action, from, to);
     }
 }
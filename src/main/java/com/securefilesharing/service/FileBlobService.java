@@ -0,0 +1,120 @@
+package com.securefilesharing.service;
+
+import com.securefilesharing.entity.FileBlob;
+import com.securefilesharing.repository.FileBlobRepository;
+import com.securefilesharing.service.storage.CryptoEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.crypto.Mac;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Content-addressed, reference-counted storage of encrypted uploads.
+ *
+ * Uploads are encrypted to a fresh file while a keyed MAC of their plaintext
+ * is computed (see {@link CryptoEngine#newContentMac}); if a blob with the
+ * same MAC already exists, the new file is dropped and the existing blob
+ * gains a reference instead. A blob's file is deleted when its last
+ * reference is released.
+ */
+@Service
+public class FileBlobService {
+
+    private static final Logger log = LoggerFactory.getLogger(FileBlobService.class);
+
+    // Lookups retried when a concurrent upload or release of the same content wins the race
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Autowired
+    private FileBlobRepository fileBlobRepository;
+
+    @Autowired
+    private CryptoEngine cryptoEngine;
+
+    /** MAC to feed an upload's plaintext through. */
+    public Mac newContentMac() {
+        return cryptoEngine.newContentMac();
+    }
+
+    /**
+     * Registers content that was just written to {@code written}. Returns the
+     * blob now holding it with one reference taken for the caller; when the
+     * content was already stored, {@code written} is deleted. Returns
+     * {@code null} if the content could not be registered, in which case the
+     * caller keeps {@code written} as an unshared file.
+     */
+    public FileBlob store(Path written, String contentMac, long sizeBytes) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            Optional<FileBlob> existing = fileBlobRepository.findByContentMac(contentMac);
+            if (existing.isPresent()) {
+                FileBlob blob = existing.get();
+                if (fileBlobRepository.acquireReference(blob.getId()) == 1) {
+                    deleteQuietly(written);
+                    return blob;
+                }
+                // Last reference is being released; look again once it is gone
+                continue;
+            }
+
+            FileBlob blob = new FileBlob();
+            blob.setContentMac(contentMac);
+            blob.setStoragePath(written.toString());
+            blob.setSizeBytes(sizeBytes);
+            blob.setRefCount(1);
+            blob.setCreatedAt(LocalDateTime.now());
+            try {
+                return fileBlobRepository.saveAndFlush(blob);
+            } catch (DataIntegrityViolationException e) {
+                // Same content registered concurrently; share that one instead
+            }
+        }
+        log.warn("Could not register content; keeping {} unshared", written);
+        return null;
+    }
+
+    /**
+     * Drops one reference to {@code blob}. When it was the last one, the blob
+     * row is removed and its file deleted - after commit if a transaction is
+     * active, so a rollback never leaves a row without content.
+     */
+    public void release(FileBlob blob) {
+        Long blobId = blob.getId();
+        String storagePath = blob.getStoragePath();
+        fileBlobRepository.releaseReference(blobId);
+        if (fileBlobRepository.deleteIfUnreferenced(blobId) == 0) {
+            return;
+        }
+
+        Path path = Paths.get(storagePath);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deleteQuietly(path);
+                }
+            });
+        } else {
+            deleteQuietly(path);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete stored content {}: {}", path, e.getMessage());
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.securefilesharing.service;
 
 import com.securefilesharing.dto.FileMetadataDto;
+import com.securefilesharing.entity.AuditLog;
+import com.securefilesharing.entity.FileBlob;
 import com.securefilesharing.entity.FileEntity;
 import com.securefilesharing.entity.AccessRequestStatus;
 import com.securefilesharing.entity.AccessType;
@@ -8,30 +10,48 @@ import com.securefilesharing.entity.User;
 import com.securefilesharing.entity.VisibilityType;
 import com.securefilesharing.repository.FileRepository;
 import com.securefilesharing.repository.FileAccessRequestRepository;
+import com.securefilesharing.service.storage.EncryptedFileStore;
+import com.securefilesharing.service.storage.MacInputStream;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.crypto.Cipher;
-import javax.crypto.spec.SecretKeySpec;
+import javax.crypto.Mac;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.Key;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.Locale;
 import java.util.List;
 import java.util.UUID;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @Service
 public class FileService {
 
+    private static final Logger log = LoggerFactory.getLogger(FileService.class);
+
     private static final String ROLE_ADMIN = "ROLE_ADMIN";
     private static final String ROLE_USER = "ROLE_USER";
     private static final String ROLE_AUDITOR = "ROLE_AUDITOR";
@@ -45,14 +65,23 @@ public class FileService {
     @Autowired
     private FileAccessRequestRepository fileAccessRequestRepository;
 
+    @Autowired
+    private EncryptedFileStore encryptedFileStore;
+
+    @Autowired
+    private FileBlobService fileBlobService;
+
     @Value("${file.upload-dir}")
     private String uploadDir;
 
     @Value("${app.protected-access.ttlSeconds:3600}")
     private long protectedAccessTtlSeconds;
 
-    private static final String ALGORITHM = "AES";
-    private static final byte[] KEY = "MySuperSecretKey".getBytes(); // 16 bytes for AES-128
+    @Value("${app.upload.batch.threads:4}")
+    private int batchUploadThreads;
+
+    // Encrypts the files of a multi-file upload concurrently; shared by all requests.
+    private ExecutorService batchUploadPool;
 
     private static final String ENCRYPTED_EXTENSION = ".enc";
     private static final String DIR_IMAGES = "images";
@@ -60,6 +89,64 @@ public class FileService {
     private static final String DIR_AUDIO = "audio";
     private static final String DIR_DOCUMENTS = "documents";
 
+    /** Outcome of one file in a multi-file upload. */
+    public static final class UploadResult {
+        private final String fileName;
+        private final FileEntity file;
+        private final String error;
+
+        private UploadResult(String fileName, FileEntity file, String error) {
+            this.fileName = fileName;
+            this.file = file;
+            this.error = error;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        /** Saved file, or {@code null} if this file failed. */
+        public FileEntity getFile() {
+            return file;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return file != null;
+        }
+    }
+
+    // Content encrypted to disk whose metadata row has not been saved yet; blob is null if it is not shared.
+    private static final class StoredUpload {
+        private final Path path;
+        private final long plaintextLength;
+        private final FileBlob blob;
+
+        private StoredUpload(Path path, long plaintextLength, FileBlob blob) {
+            this.path = path;
+            this.plaintextLength = plaintextLength;
+            this.blob = blob;
+        }
+    }
+
+    @PostConstruct
+    void startBatchUploadPool() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        batchUploadPool = Executors.newFixedThreadPool(Math.max(1, batchUploadThreads), runnable -> {
+            Thread thread = new Thread(runnable, "file-upload-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stopBatchUploadPool() {
+        batchUploadPool.shutdownNow();
+    }
+
     public FileEntity uploadFile(MultipartFile file, User owner) throws Exception {
         return uploadFile(file, owner, VisibilityType.PRIVATE, null, null);
     }
@@ -70,14 +157,133 @@ public class FileService {
             VisibilityType visibilityType,
             String purpose,
             String category) throws Exception {
+        String fileName = sanitizeOriginalFilename(file.getOriginalFilename());
+        StoredUpload stored = storeEncrypted(file, fileName);
+        return saveUploadedFile(stored, fileName, file.getContentType(), owner, visibilityType, purpose, category);
+    }
+
+    /**
+     * Uploads several files at once. Each file is encrypted to disk on the
+     * batch upload pool (at most {@code app.upload.batch.threads} at a time
+     * across all requests); the metadata rows and audit entries of the files
+     * that made it to disk are then saved together on the calling thread.
+     * A file that fails does not fail the others; results are in input order.
+     *
+     * Every task is waited for, even after a failure or an interrupt, so no
+     * file is written after the call returns; files whose rows were not saved
+     * are deleted. After an interrupt, tasks that have not started are skipped.
+     */
+    public List<UploadResult> uploadFiles(
+            List<MultipartFile> files,
+            User owner,
+            VisibilityType visibilityType,
+            String purpose,
+            String category) {
+        List<String> fileNames = new ArrayList<>(files.size());
+        List<Future<StoredUpload>> pending = new ArrayList<>(files.size());
+        AtomicBoolean aborted = new AtomicBoolean();
+        for (MultipartFile file : files) {
+            String fileName = sanitizeOriginalFilename(file.getOriginalFilename());
+            fileNames.add(fileName);
+            pending.add(batchUploadPool.submit(() -> {
+                if (aborted.get()) {
+                    throw new InterruptedIOException("Upload interrupted");
+                }
+                return storeEncrypted(file, fileName);
+            }));
+        }
+
+        UploadResult[] results = new UploadResult[files.size()];
+        List<Integer> storedIndexes = new ArrayList<>();
+        List<StoredUpload> storedUploads = new ArrayList<>();
+        boolean interrupted = false;
+        for (int i = 0; i < pending.size(); i++) {
+            while (true) {
+                try {
+                    storedUploads.add(pending.get(i).get());
+                    storedIndexes.add(i);
+                    break;
+                } catch (InterruptedException e) {
+                    // Not cancel(true): a task interrupted mid-write would leave its file behind
+                    interrupted = true;
+                    aborted.set(true);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    results[i] = new UploadResult(fileNames.get(i), null, cause.getMessage());
+                    break;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            deleteStored(storedUploads);
+            for (int index : storedIndexes) {
+                results[index] = new UploadResult(fileNames.get(index), null, "Upload interrupted");
+            }
+            return List.of(results);
+        }
+
+        List<FileEntity> saved;
+        try {
+            List<FileEntity> entities = new ArrayList<>(storedUploads.size());
+            for (int i = 0; i < storedUploads.size(); i++) {
+                int index = storedIndexes.get(i);
+                entities.add(newFileEntity(storedUploads.get(i), fileNames.get(index),
+                        files.get(index).getContentType(), owner, visibilityType, purpose, category));
+            }
+            saved = entities.isEmpty() ? List.of() : fileRepository.saveAll(entities);
+        } catch (RuntimeException e) {
+            deleteStored(storedUploads);
+            for (int index : storedIndexes) {
+                results[index] = new UploadResult(fileNames.get(index), null, e.getMessage());
+            }
+            return List.of(results);
+        }
+
+        List<AuditLog> auditEntries = new ArrayList<>(saved.size());
+        for (int i = 0; i < saved.size(); i++) {
+            FileEntity entity = saved.get(i);
+            int index = storedIndexes.get(i);
+            results[index] = new UploadResult(entity.getFileName(), entity, null);
+            auditEntries.add(auditService.newEntry(AuditService.ACTION_UPLOAD, AuditService.RESOURCE_FILE,
+                    entity.getId(), entity.getFileName(), "Uploaded file: " + entity.getFileName(),
+                    AuditService.STATUS_SUCCESS));
+        }
+        auditService.logAll(auditEntries);
+        return List.of(results);
+    }
+
+    /**
+     * Registers content that was already encrypted into a staging file by a
+     * resumable upload: moves it into its category directory and saves the
+     * metadata row.
+     */
+    public FileEntity registerStagedUpload(
+            Path staged,
+            long plaintextLength,
+            String originalFilename,
+            String contentType,
+            User owner,
+            VisibilityType visibilityType,
+            String purpose,
+            String category) throws IOException {
+        String fileName = sanitizeOriginalFilename(originalFilename);
+        Path path = newStoragePath(fileName, contentType);
+        Files.move(staged, path, StandardCopyOption.ATOMIC_MOVE);
+        // The plaintext hash was not kept across chunks, so this content is stored unshared.
+        return saveUploadedFile(new StoredUpload(path, plaintextLength, null), fileName, contentType, owner,
+                visibilityType, purpose, category);
+    }
+
+    private Path newStoragePath(String fileName, String contentType) {
         // Ensure base storage directory exists
         File baseDir = new File(uploadDir);
         if (!baseDir.exists()) {
             baseDir.mkdirs();
         }
 
-        String fileName = sanitizeOriginalFilename(file.getOriginalFilename());
-        String categoryDirName = resolveCategoryDir(file, fileName);
+        String categoryDirName = resolveCategoryDir(contentType, fileName);
 
         // Ensure category subdirectory exists
         Path categoryDir = Paths.get(uploadDir).resolve(categoryDirName);
@@ -87,33 +293,85 @@ public class FileService {
         }
 
         String encryptedFileName = UUID.randomUUID().toString() + "_" + fileName + ENCRYPTED_EXTENSION;
-        Path path = categoryDir.resolve(encryptedFileName);
+        return categoryDir.resolve(encryptedFileName);
+    }
+
+    // Encrypt segment by segment while streaming to disk, computing the keyed content MAC on the way so
+    // that content already stored is shared instead of kept twice; large uploads are sealed on several cores
+    private StoredUpload storeEncrypted(MultipartFile file, String fileName) throws Exception {
+        Path path = newStoragePath(fileName, file.getContentType());
+        Mac mac = fileBlobService.newContentMac();
+        long plaintextLength;
+        try (InputStream in = new MacInputStream(file.getInputStream(), mac)) {
+            plaintextLength = encryptedFileStore.write(in, path, file.getSize());
+        } catch (Exception e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+
+        FileBlob blob = fileBlobService.store(path, HexFormat.of().formatHex(mac.doFinal()), plaintextLength);
+        Path storedPath = blob != null ? Paths.get(blob.getStoragePath()) : path;
+        return new StoredUpload(storedPath, plaintextLength, blob);
+    }
+
+    private void deleteStored(List<StoredUpload> storedUploads) {
+        for (StoredUpload stored : storedUploads) {
+            discardStored(stored);
+        }
+    }
 
-        // Encrypt content
-        byte[] fileBytes = file.getBytes();
-        byte[] encryptedBytes = encrypt(fileBytes);
+    private void discardStored(StoredUpload stored) {
+        if (stored.blob != null) {
+            fileBlobService.release(stored.blob);
+            return;
+        }
+        try {
+            Files.deleteIfExists(stored.path);
+        } catch (IOException e) {
+            log.warn("Could not delete stored upload {}: {}", stored.path, e.getMessage());
+        }
+    }
 
-        // Save to disk
-        try (FileOutputStream fos = new FileOutputStream(path.toFile())) {
-            fos.write(encryptedBytes);
+    private FileEntity saveUploadedFile(StoredUpload stored, String fileName, String contentType,
+            User owner, VisibilityType visibilityType, String purpose, String category) {
+        FileEntity saved;
+        try {
+            saved = fileRepository.save(newFileEntity(stored, fileName, contentType, owner, visibilityType, purpose,
+                    category));
+        } catch (RuntimeException e) {
+            discardStored(stored);
+            throw e;
         }
+        auditService.logSuccess(AuditService.ACTION_UPLOAD, AuditService.RESOURCE_FILE, saved.getId(),
+                fileName, "Uploaded file: " + fileName);
+        return saved;
+    }
 
-        // Save to DB
+    private FileEntity newFileEntity(StoredUpload stored, String fileName, String contentType,
+            User owner, VisibilityType visibilityType, String purpose, String category) {
         FileEntity fileEntity = new FileEntity();
         fileEntity.setFileName(fileName);
-        fileEntity.setEncryptedPath(path.toString());
+        fileEntity.setEncryptedPath(stored.path.toString());
+        fileEntity.setBlob(stored.blob);
         fileEntity.setOwner(owner);
         fileEntity.setUploadTimestamp(LocalDateTime.now());
-        fileEntity.setSizeBytes(file.getSize());
-        fileEntity.setContentType(file.getContentType());
+        fileEntity.setSizeBytes(stored.plaintextLength);
+        fileEntity.setFormatVersion(EncryptedFileStore.FORMAT_SEGMENTED);
+        fileEntity.setKeyId(storedKeyId(stored.path));
+        fileEntity.setContentType(contentType);
         fileEntity.setVisibilityType(visibilityType == null ? VisibilityType.PRIVATE : visibilityType);
         fileEntity.setPurpose(purpose);
         fileEntity.setCategory(category);
+        return fileEntity;
+    }
 
-        FileEntity saved = fileRepository.save(fileEntity);
-        auditService.logSuccess(AuditService.ACTION_UPLOAD, AuditService.RESOURCE_FILE, saved.getId(),
-                fileName, "Uploaded file: " + fileName);
-        return saved;
+    // Shared content may still be sealed with an older key; NULL leaves it to the migration job
+    private Integer storedKeyId(Path path) {
+        try {
+            return encryptedFileStore.keyIdOf(path);
+        } catch (IOException e) {
+            return null;
+        }
     }
 
     private String sanitizeOriginalFilename(String originalFilename) {
@@ -127,9 +385,7 @@ public class FileService {
         return cleaned.isBlank() ? "file" : cleaned;
     }
 
-    private String resolveCategoryDir(MultipartFile file, String safeFileName) {
-        String contentType = file != null ? file.getContentType() : null;
-
+    private String resolveCategoryDir(String contentType, String safeFileName) {
         if (contentType != null) {
             String ct = contentType.toLowerCase(Locale.ROOT);
             if (ct.startsWith("image/"))
@@ -198,16 +454,24 @@ public class FileService {
         // Remove access requests for the file.
         fileAccessRequestRepository.deleteByFileId(fileId);
 
-        // Remove from disk best-effort.
-        try {
-            if (fileEntity.getEncryptedPath() != null) {
-                Files.deleteIfExists(Paths.get(fileEntity.getEncryptedPath()));
+        FileBlob blob = fileEntity.getBlob();
+        if (blob == null) {
+            // Unshared content: remove from disk best-effort.
+            try {
+                if (fileEntity.getEncryptedPath() != null) {
+                    Files.deleteIfExists(Paths.get(fileEntity.getEncryptedPath()));
+                }
+            } catch (Exception ignored) {
+                // best-effort disk cleanup
             }
-        } catch (Exception ignored) {
-            // best-effort disk cleanup
         }
 
         fileRepository.delete(Objects.requireNonNull(fileEntity));
+        if (blob != null) {
+            // Shared content is only removed with its last reference.
+            fileRepository.flush();
+            fileBlobService.release(blob);
+        }
         auditService.logSuccess(AuditService.ACTION_DELETE, AuditService.RESOURCE_FILE, fileId,
                 fileEntity.getFileName(), "Deleted file: " + fileEntity.getFileName());
     }
@@ -253,8 +517,13 @@ public class FileService {
         return toMetadataDto(requester, saved);
     }
 
+    /**
+     * Authorizes a download; denials are recorded in the audit log. The
+     * returned entity is then passed to {@link #writeDecrypted} to stream the
+     * plaintext, once {@link #recordDownload} has logged what is served.
+     */
     @Transactional(readOnly = true)
-    public byte[] downloadFile(Long fileId, User requester) throws Exception {
+    public FileEntity prepareDownload(Long fileId, User requester) {
         if (fileId == null) {
             throw new RuntimeException("fileId is required");
         }
@@ -268,14 +537,46 @@ public class FileService {
                     fileEntity.getFileName(), "Download denied - unauthorized access");
             throw new RuntimeException("Unauthorized Access");
         }
+        if (fileEntity.getEncryptedPath() == null || !Files.isReadable(Paths.get(fileEntity.getEncryptedPath()))) {
+            throw new RuntimeException("Stored file is missing");
+        }
+        return fileEntity;
+    }
 
-        Path path = Paths.get(fileEntity.getEncryptedPath());
-        byte[] encryptedBytes = Files.readAllBytes(path);
-        byte[] decryptedBytes = decrypt(encryptedBytes);
-
+    /**
+     * Records a download in the audit log once the request has been validated.
+     * {@code rangeDescription} is appended for partial-content responses.
+     */
+    public void recordDownload(FileEntity fileEntity, String rangeDescription) {
+        String details = "Downloaded file: " + fileEntity.getFileName();
+        if (rangeDescription != null) {
+            details += " (" + rangeDescription + ")";
+        }
         auditService.logSuccess(AuditService.ACTION_DOWNLOAD, AuditService.RESOURCE_FILE, fileEntity.getId(),
-                fileEntity.getFileName(), "Downloaded file: " + fileEntity.getFileName());
-        return decryptedBytes;
+                fileEntity.getFileName(), details);
+    }
+
+    /**
+     * Plaintext length of the stored content, or null when it is unknown.
+     */
+    public Long getPlaintextLength(FileEntity fileEntity) throws IOException {
+        return encryptedFileStore.plaintextLength(Paths.get(fileEntity.getEncryptedPath()), fileEntity.getSizeBytes());
+    }
+
+    /**
+     * Decrypts the stored file into {@code out} using fixed-size buffers, so
+     * memory use does not depend on the file size.
+     */
+    public void writeDecrypted(FileEntity fileEntity, OutputStream out) throws IOException {
+        encryptedFileStore.copyTo(Paths.get(fileEntity.getEncryptedPath()), out);
+    }
+
+    /**
+     * Decrypts plaintext bytes {@code start..end} (inclusive) into {@code out};
+     * only the encrypted segments covering the range are read.
+     */
+    public void writeDecrypted(FileEntity fileEntity, long start, long end, OutputStream out) throws IOException {
+        encryptedFileStore.copyRange(Paths.get(fileEntity.getEncryptedPath()), start, end, out);
     }
 
     @Transactional(readOnly = true)
@@ -461,18 +762,4 @@ public class FileService {
                 })
                 .isPresent();
     }
-
-    private byte[] encrypt(byte[] data) throws Exception {
-        Key key = new SecretKeySpec(KEY, ALGORITHM);
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        cipher.init(Cipher.ENCRYPT_MODE, key);
-        return cipher.doFinal(data);
-    }
-
-    private byte[] decrypt(byte[] data) throws Exception {
-        Key key = new SecretKeySpec(KEY, ALGORITHM);
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        cipher.init(Cipher.DECRYPT_MODE, key);
-        return cipher.doFinal(data);
-    }
 }
@@ -0,0 +1,305 @@
+package com.securefilesharing.service;
+
+import com.securefilesharing.entity.FileEntity;
+import com.securefilesharing.entity.UploadSession;
+import com.securefilesharing.entity.User;
+import com.securefilesharing.entity.VisibilityType;
+import com.securefilesharing.repository.UploadSessionRepository;
+import com.securefilesharing.service.storage.EncryptedFileStore;
+import com.securefilesharing.service.storage.SegmentedCipherFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Resumable uploads: init, then chunks appended at the acknowledged offset,
+ * then complete.
+ *
+ * Chunks are encrypted as they arrive into a staging file in the segmented
+ * format, so plaintext never touches disk and completing an upload is a
+ * header write and a rename. The {@link FileEntity} is only created on
+ * completion; abandoned sessions are removed after
+ * {@code app.upload.resumable.session-ttl-hours}.
+ *
+ * Every write takes a lease on the session row, so only one request on any
+ * node touches a session at a time. Segment nonces are derived from the
+ * session's nonce prefix and the segment index, so no index may be sealed
+ * twice under one prefix: a chunk marks the session before sealing, and if a
+ * chunk died before recording its progress the next one first re-seals the
+ * recorded part of the staging file under a fresh prefix.
+ */
+@Service
+public class ResumableUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumableUploadService.class);
+
+    private static final String ROLE_USER = "ROLE_USER";
+    private static final String STAGING_DIR = ".staging";
+    private static final String STAGING_EXTENSION = ".part";
+
+    // Suggested chunk size for clients; any multiple of the segment size is accepted.
+    public static final int RECOMMENDED_CHUNK_SIZE = SegmentedCipherFormat.DEFAULT_SEGMENT_SIZE * 64;
+
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private EncryptedFileStore encryptedFileStore;
+
+    @Value("${file.upload-dir}")
+    private String uploadDir;
+
+    @Value("${app.upload.resumable.max-size-bytes:5368709120}")
+    private long maxSizeBytes;
+
+    @Value("${app.upload.resumable.session-ttl-hours:24}")
+    private long sessionTtlHours;
+
+    // Long enough for the slowest chunk; a lease left by a crashed node is taken over after this
+    @Value("${app.upload.resumable.lease-minutes:60}")
+    private long leaseMinutes;
+
+    /** Thrown when a chunk does not start at the offset the server has acknowledged. */
+    public static class OffsetMismatchException extends RuntimeException {
+        private final long expectedOffset;
+
+        public OffsetMismatchException(long expectedOffset) {
+            super("Chunk must start at offset " + expectedOffset);
+            this.expectedOffset = expectedOffset;
+        }
+
+        public long getExpectedOffset() {
+            return expectedOffset;
+        }
+    }
+
+    public UploadSession initUpload(
+            User owner,
+            String fileName,
+            long totalSize,
+            String contentType,
+            VisibilityType visibilityType,
+            String purpose,
+            String category) throws IOException {
+        if (owner == null || !ROLE_USER.equals(owner.getRole())) {
+            throw new RuntimeException("Only USER can upload files");
+        }
+        if (fileName == null || fileName.isBlank()) {
+            throw new RuntimeException("fileName is required");
+        }
+        if (totalSize < 0 || totalSize > maxSizeBytes) {
+            throw new RuntimeException("totalSize must be between 0 and " + maxSizeBytes + " bytes");
+        }
+        purgeExpiredUploads();
+
+        Path stagingDir = Paths.get(uploadDir).resolve(STAGING_DIR);
+        Files.createDirectories(stagingDir);
+
+        SegmentedCipherFormat.Header header = encryptedFileStore.newStagedHeader(totalSize);
+        Instant now = Instant.now();
+
+        UploadSession session = new UploadSession();
+        session.setOwner(owner);
+        session.setFileName(fileName);
+        session.setContentType(contentType);
+        session.setVisibilityType(visibilityType == null ? VisibilityType.PRIVATE : visibilityType);
+        session.setPurpose(purpose);
+        session.setCategory(category);
+        session.setTotalSize(totalSize);
+        session.setReceivedBytes(0);
+        session.setStagingPath(stagingDir.resolve(UUID.randomUUID() + STAGING_EXTENSION).toString());
+        session.setKeyId(header.getKeyId());
+        session.setSegmentSize(header.getSegmentSize());
+        session.setNoncePrefix(header.getNoncePrefix());
+        session.setCreatedAt(now);
+        session.setUpdatedAt(now);
+        return uploadSessionRepository.save(session);
+    }
+
+    public UploadSession getUpload(Long uploadId, User requester) {
+        return findOwnedSession(uploadId, requester);
+    }
+
+    /**
+     * Encrypts the chunk read from {@code in} into the staging file. Progress
+     * is recorded even if the client disconnects part way, so the returned
+     * session (or a later {@link #getUpload}) tells the client where to resume.
+     */
+    public UploadSession appendChunk(Long uploadId, User requester, long offset, InputStream in) throws IOException {
+        UploadSession session = findOwnedSession(uploadId, requester);
+        String token = acquireLease(session);
+        try {
+            session = reload(session);
+            if (session.getSealingFrom() != null) {
+                resealStaging(session, token);
+            }
+            if (offset != session.getReceivedBytes()) {
+                throw new OffsetMismatchException(session.getReceivedBytes());
+            }
+            if (offset == session.getTotalSize()) {
+                return session;
+            }
+
+            // Committed before any nonce is used, so a crash past this point is noticed by the next chunk
+            requireLease(uploadSessionRepository.markSealing(session.getId(), offset, token));
+            long received = encryptedFileStore.appendSegments(Paths.get(session.getStagingPath()), headerOf(session),
+                    offset, in);
+            Instant now = Instant.now();
+            requireLease(uploadSessionRepository.updateReceivedBytes(session.getId(), received, now, token));
+            session.setReceivedBytes(received);
+            session.setSealingFrom(null);
+            session.setUpdatedAt(now);
+
+            if (received == session.getTotalSize() && in.read() != -1) {
+                throw new RuntimeException("Chunk extends past the declared upload size");
+            }
+            return session;
+        } finally {
+            uploadSessionRepository.releaseLease(session.getId(), token);
+        }
+    }
+
+    public FileEntity completeUpload(Long uploadId, User requester) throws IOException {
+        UploadSession session = findOwnedSession(uploadId, requester);
+        String token = acquireLease(session);
+        try {
+            session = reload(session);
+            if (session.getReceivedBytes() != session.getTotalSize()) {
+                throw new OffsetMismatchException(session.getReceivedBytes());
+            }
+            Path staging = Paths.get(session.getStagingPath());
+            encryptedFileStore.finishStaged(staging, headerOf(session));
+
+            FileEntity saved = fileService.registerStagedUpload(staging, session.getTotalSize(), session.getFileName(),
+                    session.getContentType(), session.getOwner(), session.getVisibilityType(), session.getPurpose(),
+                    session.getCategory());
+            uploadSessionRepository.delete(session);
+            return saved;
+        } finally {
+            // No-op once the session is deleted
+            uploadSessionRepository.releaseLease(session.getId(), token);
+        }
+    }
+
+    public void abortUpload(Long uploadId, User requester) {
+        UploadSession session = findOwnedSession(uploadId, requester);
+        String token = acquireLease(session);
+        try {
+            discard(session);
+        } finally {
+            uploadSessionRepository.releaseLease(session.getId(), token);
+        }
+    }
+
+    private void purgeExpiredUploads() {
+        Instant now = Instant.now();
+        Instant cutoff = now.minus(Duration.ofHours(sessionTtlHours));
+        for (UploadSession session : uploadSessionRepository.findByUpdatedAtBefore(cutoff)) {
+            String token = UUID.randomUUID().toString();
+            if (uploadSessionRepository.acquireLease(session.getId(), token, now.plus(Duration.ofMinutes(leaseMinutes)),
+                    now) == 1) {
+                try {
+                    discard(session);
+                    log.info("Removed expired upload session {}", session.getId());
+                } finally {
+                    uploadSessionRepository.releaseLease(session.getId(), token);
+                }
+            }
+        }
+    }
+
+    private String acquireLease(UploadSession session) {
+        String token = UUID.randomUUID().toString();
+        Instant now = Instant.now();
+        if (uploadSessionRepository.acquireLease(session.getId(), token, now.plus(Duration.ofMinutes(leaseMinutes)),
+                now) != 1) {
+            throw new RuntimeException("Another request is already writing to this upload");
+        }
+        return token;
+    }
+
+    // The lease ran out and another request took the session over
+    private static void requireLease(int updated) {
+        if (updated != 1) {
+            throw new RuntimeException("Upload was taken over by another request; check the offset and retry");
+        }
+    }
+
+    private UploadSession reload(UploadSession session) {
+        return uploadSessionRepository.findById(session.getId())
+                .orElseThrow(() -> new RuntimeException("Upload not found"));
+    }
+
+    /**
+     * An earlier chunk was interrupted between sealing and recording its
+     * progress, so segments from receivedBytes on may already have used their
+     * nonces. Re-seal the recorded part into a new staging file under a fresh
+     * nonce prefix; the client re-sends the rest.
+     */
+    private void resealStaging(UploadSession session, String token) throws IOException {
+        Path old = Paths.get(session.getStagingPath());
+        Path fresh = old.resolveSibling(UUID.randomUUID() + STAGING_EXTENSION);
+        SegmentedCipherFormat.Header header = encryptedFileStore.resealStaged(old, headerOf(session),
+                session.getReceivedBytes(), fresh);
+        Instant now = Instant.now();
+        if (uploadSessionRepository.updateStaging(session.getId(), fresh.toString(), header.getKeyId(),
+                header.getNoncePrefix(), now, token) != 1) {
+            Files.deleteIfExists(fresh);
+            requireLease(0);
+        }
+        Files.deleteIfExists(old);
+        session.setStagingPath(fresh.toString());
+        session.setKeyId(header.getKeyId());
+        session.setNoncePrefix(header.getNoncePrefix());
+        session.setSealingFrom(null);
+        session.setUpdatedAt(now);
+        log.info("Re-sealed upload session {} under a fresh nonce prefix after an interrupted chunk",
+                session.getId());
+    }
+
+    private void discard(UploadSession session) {
+        try {
+            Files.deleteIfExists(Paths.get(session.getStagingPath()));
+        } catch (IOException e) {
+            log.warn("Could not delete staging file {}: {}", session.getStagingPath(), e.getMessage());
+        }
+        uploadSessionRepository.delete(session);
+    }
+
+    private UploadSession findOwnedSession(Long uploadId, User requester) {
+        if (requester == null) {
+            throw new RuntimeException("Unauthorized");
+        }
+        if (uploadId == null) {
+            throw new RuntimeException("uploadId is required");
+        }
+        UploadSession session = uploadSessionRepository.findById(uploadId)
+                .orElseThrow(() -> new RuntimeException("Upload not found"));
+        boolean isOwner = session.getOwner() != null
+                && Objects.equals(session.getOwner().getId(), requester.getId());
+        if (!isOwner) {
+            throw new RuntimeException("Upload not found");
+        }
+        return session;
+    }
+
+    private static SegmentedCipherFormat.Header headerOf(UploadSession session) {
+        return new SegmentedCipherFormat.Header(session.getKeyId(), session.getSegmentSize(), session.getTotalSize(),
+                session.getNoncePrefix());
+    }
+}
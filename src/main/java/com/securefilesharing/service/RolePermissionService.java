@@ -3,15 +3,21 @@ package com.securefilesharing.service;
 import com.securefilesharing.entity.RoleDefinition;
 import com.securefilesharing.repository.RoleDefinitionRepository;
 import com.securefilesharing.security.Permission;
+import com.securefilesharing.security.services.TokenVersionCache;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class RolePermissionService {
@@ -20,9 +26,33 @@ public class RolePermissionService {
     public static final String PERM_PREFIX = "PERM_";
 
     private final RoleDefinitionRepository roleDefinitionRepository;
+    private final TokenVersionCache tokenVersionCache;
 
-    public RolePermissionService(RoleDefinitionRepository roleDefinitionRepository) {
+    // Immutable authority lists per normalized role name. Entries expire after the TTL so edits made
+    // directly in role_definitions are picked up; code that changes a role calls invalidateRole.
+    private final Map<String, CachedAuthorities> authorityCache = new ConcurrentHashMap<>();
+    private final long cacheTtlMillis;
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong cacheEvictions = new AtomicLong();
+
+    private static final class CachedAuthorities {
+        private final List<GrantedAuthority> authorities;
+        private final long expiresAtMillis;
+
+        private CachedAuthorities(List<GrantedAuthority> authorities, long expiresAtMillis) {
+            this.authorities = authorities;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    public RolePermissionService(RoleDefinitionRepository roleDefinitionRepository,
+            TokenVersionCache tokenVersionCache,
+            @Value("${app.security.role-cache.ttl-seconds:300}") long cacheTtlSeconds) {
         this.roleDefinitionRepository = roleDefinitionRepository;
+        this.tokenVersionCache = tokenVersionCache;
+        this.cacheTtlMillis = Math.max(0, cacheTtlSeconds) * 1000;
     }
 
     public String normalizeRoleName(String roleName) {
@@ -44,9 +74,68 @@ public class RolePermissionService {
                 .orElseGet(LinkedHashSet::new);
     }
 
+    /**
+     * Authorities granted to a role: the role itself plus its {@code PERM_*}
+     * permissions. Served from the cache; the returned list is immutable.
+     */
     public Collection<? extends GrantedAuthority> buildAuthorities(String roleName) {
         String normalizedRole = normalizeRoleName(roleName);
+        long now = System.currentTimeMillis();
+
+        CachedAuthorities cached = authorityCache.get(normalizedRole);
+        if (cached != null && cached.expiresAtMillis > now) {
+            cacheHits.incrementAndGet();
+            return cached.authorities;
+        }
+        if (cached != null && authorityCache.remove(normalizedRole, cached)) {
+            cacheEvictions.incrementAndGet();
+        }
+
+        cacheMisses.incrementAndGet();
+        List<GrantedAuthority> authorities = loadAuthorities(normalizedRole);
+        authorityCache.put(normalizedRole, new CachedAuthorities(authorities, now + cacheTtlMillis));
+        return authorities;
+    }
+
+    /**
+     * Called after a role's definition changed: drops its cached authorities
+     * and revokes the tokens of its users, whose JWTs carry the old
+     * authorities. Edits made directly in role_definitions skip this; they
+     * reach new logins after the cache TTL and old tokens only at expiry.
+     */
+    public void invalidateRole(String roleName) {
+        String normalized = normalizeRoleName(roleName);
+        if (authorityCache.remove(normalized) != null) {
+            cacheEvictions.incrementAndGet();
+        }
+        // users.role holds the name with or without the prefix; unset means ROLE_USER
+        Set<String> storedNames = new LinkedHashSet<>(List.of(normalized, normalized.substring(ROLE_PREFIX.length())));
+        if ("ROLE_USER".equals(normalized)) {
+            storedNames.add("");
+        }
+        tokenVersionCache.invalidateTokensByRole(storedNames);
+    }
+
+    /** Drops every cached authority list; issued tokens are not revoked. */
+    public void invalidateAll() {
+        int size = authorityCache.size();
+        authorityCache.clear();
+        cacheEvictions.addAndGet(size);
+    }
+
+    public Map<String, Object> cacheStats() {
+        long hits = cacheHits.get();
+        long misses = cacheMisses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", authorityCache.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", cacheEvictions.get());
+        stats.put("hitRate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        return stats;
+    }
 
+    private List<GrantedAuthority> loadAuthorities(String normalizedRole) {
         Set<GrantedAuthority> authorities = new LinkedHashSet<>();
         authorities.add(new SimpleGrantedAuthority(normalizedRole));
 
@@ -67,6 +156,6 @@ public class RolePermissionService {
             authorities.add(new SimpleGrantedAuthority(PERM_PREFIX + Permission.FILE_SHARE.name()));
         }
 
-        return new ArrayList<>(authorities);
+        return List.copyOf(authorities);
     }
 }
@@ -0,0 +1,24 @@
+package com.securefilesharing.service.audit;
+
+import java.time.LocalDateTime;
+
+/**
+ * Conditions for searching archived audit entries, with the same meaning as
+ * the audit_logs search: username and fileName match case-insensitive
+ * substrings, the other filters exact values, and startDate / endDate are
+ * inclusive. Null means no condition. When beforeTimestamp is set, only
+ * entries before the (beforeTimestamp, beforeId) cursor in newest-first
+ * order match.
+ */
+public record AuditArchiveFilter(
+        Long userId,
+        String username,
+        String action,
+        String status,
+        String resourceType,
+        String fileName,
+        LocalDateTime startDate,
+        LocalDateTime endDate,
+        LocalDateTime beforeTimestamp,
+        Long beforeId) {
+}
@@ -0,0 +1,252 @@
+package com.securefilesharing.service.audit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Layout and encodings of the columnar audit archive files ({@code .acol}).
+ *
+ * <pre>
+ * file   := MAGIC VERSION block* footer footerLength:int32 MAGIC
+ * block  := column{COLUMNS}                       one chunk per column, in column order
+ * column := compressedLength:varint rawLength:varint deflate(raw)
+ * footer := dictionary{DICTIONARIES} blockCount:varint blockStats*
+ * blockStats := offset:int64 rows:varint minTs maxTs minId maxId:zigzag-varint
+ *               codes{action, status, username}   sorted dictionary codes present in the block
+ * </pre>
+ *
+ * Rows are stored in ascending (timestamp, id) order. Ids and timestamps
+ * (microseconds) are delta-encoded; action, status, username, role and
+ * resource type are dictionary-encoded per file (code + 1, 0 for null);
+ * nullable numbers are zigzag + 1; strings are length + 1 and UTF-8 bytes.
+ */
+final class AuditArchiveFormat {
+
+    static final int MAGIC = 0x41434F4C; // "ACOL"
+    static final byte VERSION = 1;
+
+    static final int ROWS_PER_BLOCK = 4096;
+
+    static final int COL_ID = 0;
+    static final int COL_TIMESTAMP = 1;
+    static final int COL_ACTION = 2;
+    static final int COL_STATUS = 3;
+    static final int COL_USERNAME = 4;
+    static final int COL_ROLE = 5;
+    static final int COL_RESOURCE_TYPE = 6;
+    static final int COL_USER_ID = 7;
+    static final int COL_RESOURCE_ID = 8;
+    static final int COL_FILE_ID = 9;
+    static final int COL_FILE_OWNER_ID = 10;
+    static final int COL_TARGET_USER_ID = 11;
+    static final int COL_FILE_NAME = 12;
+    static final int COL_IP_ADDRESS = 13;
+    static final int COL_USER_AGENT = 14;
+    static final int COL_DETAILS = 15;
+    static final int COLUMNS = 16;
+
+    // Dictionary-encoded columns, in footer order
+    static final int DICT_ACTION = 0;
+    static final int DICT_STATUS = 1;
+    static final int DICT_USERNAME = 2;
+    static final int DICT_ROLE = 3;
+    static final int DICT_RESOURCE_TYPE = 4;
+    static final int DICTIONARIES = 5;
+
+    private AuditArchiveFormat() {
+    }
+
+    static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + time.getNano() / 1_000;
+    }
+
+    static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    static byte[] deflate(byte[] raw, int length) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(raw, 0, length);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 4));
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] inflate(byte[] compressed, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int read = 0;
+            while (read < rawLength) {
+                int n = inflater.inflate(raw, read, rawLength - read);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != rawLength) {
+                throw new IOException("Truncated archive column");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt archive column", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Growable byte buffer with the varint encodings used by the format. */
+    static final class Encoder {
+        private byte[] buf = new byte[1024];
+        private int size;
+
+        void writeByte(int b) {
+            if (size == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            buf[size++] = (byte) b;
+        }
+
+        void writeBytes(byte[] bytes) {
+            if (size + bytes.length > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + bytes.length));
+            }
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeVarLong(long v) {
+            while ((v & ~0x7FL) != 0) {
+                writeByte((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            writeByte((int) v);
+        }
+
+        void writeZigZag(long v) {
+            writeVarLong((v << 1) ^ (v >> 63));
+        }
+
+        void writeNullableLong(Long v) {
+            writeVarLong(v == null ? 0 : ((v << 1) ^ (v >> 63)) + 1);
+        }
+
+        void writeString(String s) {
+            if (s == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            writeBytes(bytes);
+        }
+
+        void writeLong(long v) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                writeByte((int) (v >>> shift));
+            }
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void reset() {
+            size = 0;
+        }
+    }
+
+    /** Reads what {@link Encoder} wrote. */
+    static final class Decoder {
+        private final byte[] buf;
+        private int pos;
+
+        Decoder(byte[] buf) {
+            this.buf = buf;
+        }
+
+        long readVarLong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= buf.length) {
+                    throw new IOException("Truncated archive data");
+                }
+                byte b = buf[pos++];
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new IOException("Malformed varint in archive");
+        }
+
+        long readZigZag() throws IOException {
+            long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        Long readNullableLong() throws IOException {
+            long v = readVarLong();
+            if (v == 0) {
+                return null;
+            }
+            v -= 1;
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        String readString() throws IOException {
+            long length = readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            int n = (int) (length - 1);
+            if (n < 0 || pos + n > buf.length) {
+                throw new IOException("Truncated archive string");
+            }
+            String s = new String(buf, pos, n, StandardCharsets.UTF_8);
+            pos += n;
+            return s;
+        }
+
+        byte[] readBytes(int n) throws IOException {
+            if (n < 0 || pos + n > buf.length) {
+                throw new IOException("Truncated archive data");
+            }
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + n);
+            pos += n;
+            return bytes;
+        }
+
+        long readLong() throws IOException {
+            if (pos + 8 > buf.length) {
+                throw new IOException("Truncated archive data");
+            }
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+    }
+}
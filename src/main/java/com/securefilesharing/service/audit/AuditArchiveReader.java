@@ -0,0 +1,408 @@
+package com.securefilesharing.service.audit;
+
+import com.securefilesharing.entity.AuditLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static com.securefilesharing.service.audit.AuditArchiveFormat.*;
+
+/**
+ * Scans one columnar archive file with predicate pushdown.
+ *
+ * A filter is first resolved against the file's dictionaries, so a value
+ * the file never contains rules out the whole file. Blocks whose footer
+ * statistics (timestamp range, codes present) cannot match are not read.
+ * Within a block only the columns a filter needs are inflated, and the rest
+ * only for matching rows.
+ */
+final class AuditArchiveReader implements Closeable {
+
+    /** Receives matching entries; returning false ends the scan. */
+    @FunctionalInterface
+    interface RowVisitor {
+        boolean visit(AuditLog entry) throws IOException;
+    }
+
+    private static final class BlockStats {
+        long offset;
+        long end;
+        int rows;
+        long minTs;
+        long maxTs;
+        long minId;
+        long maxId;
+        int[] actionCodes;
+        int[] statusCodes;
+        int[] usernameCodes;
+    }
+
+    private final FileChannel channel;
+    private final List<List<String>> dictionaries = new ArrayList<>(DICTIONARIES);
+    private final BlockStats[] blocks;
+
+    private AuditArchiveReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        if (size < 13) {
+            throw new IOException("Not an audit archive file");
+        }
+        ByteBuffer header = read(0, 5);
+        if (header.getInt() != MAGIC || header.get() != VERSION) {
+            throw new IOException("Not an audit archive file");
+        }
+        ByteBuffer trailer = read(size - 8, 8);
+        int footerLength = trailer.getInt();
+        if (trailer.getInt() != MAGIC || footerLength < 0 || footerLength > size - 13) {
+            throw new IOException("Incomplete audit archive file");
+        }
+        long footerStart = size - 8 - footerLength;
+        Decoder footer = new Decoder(read(footerStart, footerLength).array());
+        for (int d = 0; d < DICTIONARIES; d++) {
+            int n = (int) footer.readVarLong();
+            List<String> dictionary = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                dictionary.add(footer.readString());
+            }
+            dictionaries.add(dictionary);
+        }
+        blocks = new BlockStats[(int) footer.readVarLong()];
+        for (int b = 0; b < blocks.length; b++) {
+            BlockStats stats = new BlockStats();
+            stats.offset = footer.readLong();
+            stats.rows = (int) footer.readVarLong();
+            stats.minTs = footer.readZigZag();
+            stats.maxTs = footer.readZigZag();
+            stats.minId = footer.readZigZag();
+            stats.maxId = footer.readZigZag();
+            stats.actionCodes = readCodeSet(footer);
+            stats.statusCodes = readCodeSet(footer);
+            stats.usernameCodes = readCodeSet(footer);
+            blocks[b] = stats;
+        }
+        for (int b = 0; b < blocks.length; b++) {
+            blocks[b].end = b + 1 < blocks.length ? blocks[b + 1].offset : footerStart;
+        }
+    }
+
+    static AuditArchiveReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new AuditArchiveReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long count(AuditArchiveFilter filter) throws IOException {
+        Query query = compile(filter);
+        if (query == null) {
+            return 0;
+        }
+        long count = 0;
+        for (BlockStats stats : blocks) {
+            if (!query.mayMatch(stats)) {
+                continue;
+            }
+            Block block = readBlock(stats);
+            for (int i = 0; i < block.rows; i++) {
+                if (query.matches(block, i)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Visits matching entries newest first; returns false if the visitor stopped the scan. */
+    boolean scanNewestFirst(AuditArchiveFilter filter, RowVisitor visitor) throws IOException {
+        Query query = compile(filter);
+        if (query == null) {
+            return true;
+        }
+        for (int b = blocks.length - 1; b >= 0; b--) {
+            if (!query.mayMatch(blocks[b])) {
+                continue;
+            }
+            Block block = readBlock(blocks[b]);
+            for (int i = block.rows - 1; i >= 0; i--) {
+                if (query.matches(block, i) && !visitor.visit(block.entry(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Visits every entry oldest first. */
+    void scanAll(RowVisitor visitor) throws IOException {
+        for (BlockStats stats : blocks) {
+            Block block = readBlock(stats);
+            for (int i = 0; i < block.rows; i++) {
+                if (!visitor.visit(block.entry(i))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // ==================== PREDICATES ====================
+
+    private final class Query {
+        int action = -1;
+        int status = -1;
+        int resourceType = -1;
+        boolean[] usernames;
+        Long userId;
+        String fileName;
+        long start = Long.MIN_VALUE;
+        long end = Long.MAX_VALUE;
+        boolean cursor;
+        long beforeTs;
+        long beforeId;
+
+        boolean mayMatch(BlockStats stats) {
+            if (stats.maxTs < start || stats.minTs > end) {
+                return false;
+            }
+            if (cursor && stats.minTs > beforeTs) {
+                return false;
+            }
+            if (action >= 0 && Arrays.binarySearch(stats.actionCodes, action) < 0) {
+                return false;
+            }
+            if (status >= 0 && Arrays.binarySearch(stats.statusCodes, status) < 0) {
+                return false;
+            }
+            if (usernames != null) {
+                for (int code : stats.usernameCodes) {
+                    if (usernames[code]) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return true;
+        }
+
+        boolean matches(Block block, int i) throws IOException {
+            long ts = block.longs(COL_TIMESTAMP)[i];
+            if (ts < start || ts > end) {
+                return false;
+            }
+            if (cursor && (ts > beforeTs || (ts == beforeTs && block.longs(COL_ID)[i] >= beforeId))) {
+                return false;
+            }
+            if (action >= 0 && block.codes(COL_ACTION)[i] != action) {
+                return false;
+            }
+            if (status >= 0 && block.codes(COL_STATUS)[i] != status) {
+                return false;
+            }
+            if (resourceType >= 0 && block.codes(COL_RESOURCE_TYPE)[i] != resourceType) {
+                return false;
+            }
+            if (usernames != null && !usernames[block.codes(COL_USERNAME)[i]]) {
+                return false;
+            }
+            if (userId != null && !userId.equals(block.nullableLongs(COL_USER_ID)[i])) {
+                return false;
+            }
+            if (fileName != null) {
+                String name = block.strings(COL_FILE_NAME)[i];
+                return name != null && name.toLowerCase(Locale.ROOT).contains(fileName);
+            }
+            return true;
+        }
+    }
+
+    // Null when the file cannot contain a match
+    private Query compile(AuditArchiveFilter filter) {
+        Query query = new Query();
+        if (filter.action() != null && (query.action = encoded(DICT_ACTION, filter.action())) < 0) {
+            return null;
+        }
+        if (filter.status() != null && (query.status = encoded(DICT_STATUS, filter.status())) < 0) {
+            return null;
+        }
+        if (filter.resourceType() != null
+                && (query.resourceType = encoded(DICT_RESOURCE_TYPE, filter.resourceType())) < 0) {
+            return null;
+        }
+        if (filter.username() != null) {
+            String needle = filter.username().toLowerCase(Locale.ROOT);
+            List<String> names = dictionaries.get(DICT_USERNAME);
+            query.usernames = new boolean[names.size() + 1];
+            boolean any = false;
+            for (int i = 0; i < names.size(); i++) {
+                if (names.get(i).toLowerCase(Locale.ROOT).contains(needle)) {
+                    query.usernames[i + 1] = true;
+                    any = true;
+                }
+            }
+            if (!any) {
+                return null;
+            }
+        }
+        query.userId = filter.userId();
+        query.fileName = filter.fileName() == null ? null : filter.fileName().toLowerCase(Locale.ROOT);
+        if (filter.startDate() != null) {
+            query.start = toMicros(filter.startDate());
+        }
+        if (filter.endDate() != null) {
+            query.end = toMicros(filter.endDate());
+        }
+        if (filter.beforeTimestamp() != null) {
+            query.cursor = true;
+            query.beforeTs = toMicros(filter.beforeTimestamp());
+            query.beforeId = filter.beforeId() == null ? Long.MAX_VALUE : filter.beforeId();
+        }
+        return query;
+    }
+
+    // Stored code (index + 1) of a dictionary value, or -1 if the file never has it
+    private int encoded(int dictionary, String value) {
+        int index = dictionaries.get(dictionary).indexOf(value);
+        return index < 0 ? -1 : index + 1;
+    }
+
+    // ==================== BLOCKS ====================
+
+    private final class Block {
+        final int rows;
+        final byte[][] compressed = new byte[COLUMNS][];
+        final int[] rawLengths = new int[COLUMNS];
+        final long[][] longs = new long[COLUMNS][];
+        final int[][] codes = new int[COLUMNS][];
+        final Long[][] nullableLongs = new Long[COLUMNS][];
+        final String[][] strings = new String[COLUMNS][];
+
+        Block(int rows) {
+            this.rows = rows;
+        }
+
+        private Decoder column(int col) throws IOException {
+            return new Decoder(inflate(compressed[col], rawLengths[col]));
+        }
+
+        // Delta-encoded id / timestamp column
+        long[] longs(int col) throws IOException {
+            if (longs[col] == null) {
+                Decoder in = column(col);
+                long[] out = new long[rows];
+                long prev = 0;
+                for (int i = 0; i < rows; i++) {
+                    prev += in.readZigZag();
+                    out[i] = prev;
+                }
+                longs[col] = out;
+            }
+            return longs[col];
+        }
+
+        int[] codes(int col) throws IOException {
+            if (codes[col] == null) {
+                Decoder in = column(col);
+                int[] out = new int[rows];
+                for (int i = 0; i < rows; i++) {
+                    out[i] = (int) in.readVarLong();
+                }
+                codes[col] = out;
+            }
+            return codes[col];
+        }
+
+        Long[] nullableLongs(int col) throws IOException {
+            if (nullableLongs[col] == null) {
+                Decoder in = column(col);
+                Long[] out = new Long[rows];
+                for (int i = 0; i < rows; i++) {
+                    out[i] = in.readNullableLong();
+                }
+                nullableLongs[col] = out;
+            }
+            return nullableLongs[col];
+        }
+
+        String[] strings(int col) throws IOException {
+            if (strings[col] == null) {
+                Decoder in = column(col);
+                String[] out = new String[rows];
+                for (int i = 0; i < rows; i++) {
+                    out[i] = in.readString();
+                }
+                strings[col] = out;
+            }
+            return strings[col];
+        }
+
+        private String value(int col, int dictionary, int i) throws IOException {
+            int code = codes(col)[i];
+            return code == 0 ? null : dictionaries.get(dictionary).get(code - 1);
+        }
+
+        AuditLog entry(int i) throws IOException {
+            AuditLog entry = new AuditLog();
+            entry.setId(longs(COL_ID)[i]);
+            entry.setTimestamp(fromMicros(longs(COL_TIMESTAMP)[i]));
+            entry.setAction(value(COL_ACTION, DICT_ACTION, i));
+            entry.setStatus(value(COL_STATUS, DICT_STATUS, i));
+            entry.setUsername(value(COL_USERNAME, DICT_USERNAME, i));
+            entry.setRole(value(COL_ROLE, DICT_ROLE, i));
+            entry.setResourceType(value(COL_RESOURCE_TYPE, DICT_RESOURCE_TYPE, i));
+            entry.setUserId(nullableLongs(COL_USER_ID)[i]);
+            entry.setResourceId(nullableLongs(COL_RESOURCE_ID)[i]);
+            entry.setFileId(nullableLongs(COL_FILE_ID)[i]);
+            entry.setFileOwnerId(nullableLongs(COL_FILE_OWNER_ID)[i]);
+            entry.setTargetUserId(nullableLongs(COL_TARGET_USER_ID)[i]);
+            entry.setFileName(strings(COL_FILE_NAME)[i]);
+            entry.setIpAddress(strings(COL_IP_ADDRESS)[i]);
+            entry.setUserAgent(strings(COL_USER_AGENT)[i]);
+            entry.setDetails(strings(COL_DETAILS)[i]);
+            return entry;
+        }
+    }
+
+    private Block readBlock(BlockStats stats) throws IOException {
+        Decoder in = new Decoder(read(stats.offset, (int) (stats.end - stats.offset)).array());
+        Block block = new Block(stats.rows);
+        for (int col = 0; col < COLUMNS; col++) {
+            int compressedLength = (int) in.readVarLong();
+            block.rawLengths[col] = (int) in.readVarLong();
+            block.compressed[col] = in.readBytes(compressedLength);
+        }
+        return block;
+    }
+
+    private static int[] readCodeSet(Decoder in) throws IOException {
+        int[] set = new int[(int) in.readVarLong()];
+        for (int i = 0; i < set.length; i++) {
+            set[i] = (int) in.readVarLong();
+        }
+        return set;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated audit archive file");
+            }
+        }
+        return buffer.flip();
+    }
+}
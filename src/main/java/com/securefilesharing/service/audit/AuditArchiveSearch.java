@@ -0,0 +1,128 @@
+package com.securefilesharing.service.audit;
+
+import com.securefilesharing.entity.AuditLog;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Searches the columnar audit archives written by {@link AuditArchiver},
+ * newest first, to continue a search past the rows still in audit_logs.
+ * Day files outside the filter's date range are never opened; inside a
+ * file, {@link AuditArchiveReader} skips blocks by their footer statistics.
+ */
+@Component
+public class AuditArchiveSearch {
+
+    private static final Comparator<AuditLog> NEWEST_FIRST = Comparator.comparing(AuditLog::getTimestamp)
+            .thenComparing(AuditLog::getId).reversed();
+
+    private final AuditArchiver archiver;
+
+    public AuditArchiveSearch(AuditArchiver archiver) {
+        this.archiver = archiver;
+    }
+
+    /** False when the range starts inside the hot window, so only audit_logs can match. */
+    public boolean mayContain(AuditArchiveFilter filter) {
+        return filter.startDate() == null || filter.startDate().isBefore(archiver.hotWindowStart());
+    }
+
+    public long count(AuditArchiveFilter filter) {
+        if (!mayContain(filter)) {
+            return 0;
+        }
+        long count = 0;
+        try {
+            for (List<AuditArchiver.ArchiveFile> parts : candidateDays(filter).values()) {
+                for (AuditArchiver.ArchiveFile part : parts) {
+                    try (AuditArchiveReader reader = AuditArchiveReader.open(part.path())) {
+                        count += reader.count(filter);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read audit archives: " + e.getMessage(), e);
+        }
+        return count;
+    }
+
+    /** Up to {@code limit} matching entries, newest first, after skipping the first {@code skip}. */
+    public List<AuditLog> findNewestFirst(AuditArchiveFilter filter, long skip, int limit) {
+        List<AuditLog> result = new ArrayList<>();
+        if (!mayContain(filter) || limit <= 0) {
+            return result;
+        }
+        long[] toSkip = { skip };
+        try {
+            for (List<AuditArchiver.ArchiveFile> parts : candidateDays(filter).values()) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                if (parts.size() == 1) {
+                    try (AuditArchiveReader reader = AuditArchiveReader.open(parts.get(0).path())) {
+                        if (toSkip[0] > 0) {
+                            long matches = reader.count(filter);
+                            if (matches <= toSkip[0]) {
+                                toSkip[0] -= matches;
+                                continue;
+                            }
+                        }
+                        reader.scanNewestFirst(filter, entry -> {
+                            if (toSkip[0] > 0) {
+                                toSkip[0]--;
+                                return true;
+                            }
+                            result.add(entry);
+                            return result.size() < limit;
+                        });
+                    }
+                } else {
+                    // Late entries archived after their day interleave with the earlier part; merge the day
+                    List<AuditLog> day = new ArrayList<>();
+                    for (AuditArchiver.ArchiveFile part : parts) {
+                        try (AuditArchiveReader reader = AuditArchiveReader.open(part.path())) {
+                            reader.scanNewestFirst(filter, day::add);
+                        }
+                    }
+                    day.sort(NEWEST_FIRST);
+                    for (AuditLog entry : day) {
+                        if (toSkip[0] > 0) {
+                            toSkip[0]--;
+                        } else if (result.size() < limit) {
+                            result.add(entry);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read audit archives: " + e.getMessage(), e);
+        }
+        return result;
+    }
+
+    // Archive files per day, newest day first, limited to the days the filter can match
+    private Map<LocalDate, List<AuditArchiver.ArchiveFile>> candidateDays(AuditArchiveFilter filter)
+            throws IOException {
+        LocalDate first = filter.startDate() == null ? null : filter.startDate().toLocalDate();
+        LocalDate last = filter.endDate() == null ? null : filter.endDate().toLocalDate();
+        if (filter.beforeTimestamp() != null) {
+            LocalDate cursorDay = filter.beforeTimestamp().toLocalDate();
+            last = last == null || cursorDay.isBefore(last) ? cursorDay : last;
+        }
+        Map<LocalDate, List<AuditArchiver.ArchiveFile>> days = new TreeMap<>(Comparator.reverseOrder());
+        for (AuditArchiver.ArchiveFile archive : archiver.listArchives()) {
+            if ((first != null && archive.day().isBefore(first)) || (last != null && archive.day().isAfter(last))) {
+                continue;
+            }
+            days.computeIfAbsent(archive.day(), day -> new ArrayList<>()).add(archive);
+        }
+        return days;
+    }
+}
@@ -0,0 +1,190 @@
+package com.securefilesharing.service.audit;
+
+import com.securefilesharing.entity.AuditLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static com.securefilesharing.service.audit.AuditArchiveFormat.*;
+
+/**
+ * Writes one columnar archive file. Entries must be appended in ascending
+ * (timestamp, id) order; {@link #finish} writes the footer and syncs the file.
+ */
+final class AuditArchiveWriter implements Closeable {
+
+    private final FileChannel channel;
+
+    // Per-file dictionaries: value -> code, and codes in order for the footer
+    private final List<Map<String, Integer>> codes = new ArrayList<>(DICTIONARIES);
+    private final List<List<String>> values = new ArrayList<>(DICTIONARIES);
+
+    private final List<AuditLog> pending = new ArrayList<>(ROWS_PER_BLOCK);
+    private final Encoder[] columns = new Encoder[COLUMNS];
+    private final Encoder block = new Encoder();
+    private final Encoder blockStats = new Encoder();
+    private int blockCount;
+
+    private long position;
+    private long rows;
+    private long maxId;
+
+    AuditArchiveWriter(Path path) throws IOException {
+        for (int i = 0; i < DICTIONARIES; i++) {
+            codes.add(new HashMap<>());
+            values.add(new ArrayList<>());
+        }
+        for (int i = 0; i < COLUMNS; i++) {
+            columns[i] = new Encoder();
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(5);
+        header.putInt(MAGIC).put(VERSION).flip();
+        write(header);
+    }
+
+    long rowCount() {
+        return rows;
+    }
+
+    long maxId() {
+        return maxId;
+    }
+
+    void append(AuditLog entry) throws IOException {
+        pending.add(entry);
+        rows++;
+        maxId = Math.max(maxId, entry.getId());
+        if (pending.size() == ROWS_PER_BLOCK) {
+            flushBlock();
+        }
+    }
+
+    void finish() throws IOException {
+        if (!pending.isEmpty()) {
+            flushBlock();
+        }
+        Encoder footer = new Encoder();
+        for (List<String> dictionary : values) {
+            footer.writeVarLong(dictionary.size());
+            for (String value : dictionary) {
+                footer.writeString(value);
+            }
+        }
+        footer.writeVarLong(blockCount);
+        footer.writeBytes(Arrays.copyOf(blockStats.array(), blockStats.size()));
+        write(ByteBuffer.wrap(footer.array(), 0, footer.size()));
+
+        ByteBuffer trailer = ByteBuffer.allocate(8);
+        trailer.putInt(footer.size()).putInt(MAGIC).flip();
+        write(trailer);
+        channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void flushBlock() throws IOException {
+        for (Encoder column : columns) {
+            column.reset();
+        }
+        TreeSet<Integer> actionCodes = new TreeSet<>();
+        TreeSet<Integer> statusCodes = new TreeSet<>();
+        TreeSet<Integer> usernameCodes = new TreeSet<>();
+        long prevId = 0;
+        long prevTs = 0;
+        long minId = Long.MAX_VALUE;
+        long blockMaxId = Long.MIN_VALUE;
+        for (AuditLog entry : pending) {
+            long id = entry.getId();
+            long ts = toMicros(entry.getTimestamp());
+            columns[COL_ID].writeZigZag(id - prevId);
+            columns[COL_TIMESTAMP].writeZigZag(ts - prevTs);
+            prevId = id;
+            prevTs = ts;
+            minId = Math.min(minId, id);
+            blockMaxId = Math.max(blockMaxId, id);
+
+            actionCodes.add(writeCode(COL_ACTION, DICT_ACTION, entry.getAction()));
+            statusCodes.add(writeCode(COL_STATUS, DICT_STATUS, entry.getStatus()));
+            usernameCodes.add(writeCode(COL_USERNAME, DICT_USERNAME, entry.getUsername()));
+            writeCode(COL_ROLE, DICT_ROLE, entry.getRole());
+            writeCode(COL_RESOURCE_TYPE, DICT_RESOURCE_TYPE, entry.getResourceType());
+
+            columns[COL_USER_ID].writeNullableLong(entry.getUserId());
+            columns[COL_RESOURCE_ID].writeNullableLong(entry.getResourceId());
+            columns[COL_FILE_ID].writeNullableLong(entry.getFileId());
+            columns[COL_FILE_OWNER_ID].writeNullableLong(entry.getFileOwnerId());
+            columns[COL_TARGET_USER_ID].writeNullableLong(entry.getTargetUserId());
+            columns[COL_FILE_NAME].writeString(entry.getFileName());
+            columns[COL_IP_ADDRESS].writeString(entry.getIpAddress());
+            columns[COL_USER_AGENT].writeString(entry.getUserAgent());
+            columns[COL_DETAILS].writeString(entry.getDetails());
+        }
+
+        block.reset();
+        for (Encoder column : columns) {
+            byte[] compressed = deflate(column.array(), column.size());
+            block.writeVarLong(compressed.length);
+            block.writeVarLong(column.size());
+            block.writeBytes(compressed);
+        }
+
+        blockStats.writeLong(position);
+        blockStats.writeVarLong(pending.size());
+        blockStats.writeZigZag(toMicros(pending.get(0).getTimestamp()));
+        blockStats.writeZigZag(prevTs);
+        blockStats.writeZigZag(minId);
+        blockStats.writeZigZag(blockMaxId);
+        writeCodeSet(actionCodes);
+        writeCodeSet(statusCodes);
+        writeCodeSet(usernameCodes);
+        blockCount++;
+
+        write(ByteBuffer.wrap(block.array(), 0, block.size()));
+        pending.clear();
+    }
+
+    // Writes code + 1 (0 for null) and returns that value
+    private int writeCode(int column, int dictionary, String value) {
+        int encoded = 0;
+        if (value != null) {
+            Integer code = codes.get(dictionary).get(value);
+            if (code == null) {
+                code = values.get(dictionary).size();
+                codes.get(dictionary).put(value, code);
+                values.get(dictionary).add(value);
+            }
+            encoded = code + 1;
+        }
+        columns[column].writeVarLong(encoded);
+        return encoded;
+    }
+
+    private void writeCodeSet(TreeSet<Integer> set) {
+        blockStats.writeVarLong(set.size());
+        for (int code : set) {
+            blockStats.writeVarLong(code);
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        position += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.securefilesharing.service.audit;
+
+import com.securefilesharing.entity.AuditLog;
+import com.securefilesharing.repository.AuditLogRepository;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps {@code audit_logs} to a hot window of recent months and moves older
+ * days to columnar archive files (see {@link AuditArchiveFormat}).
+ *
+ * Each run takes the oldest day that has fallen out of the window, writes
+ * its rows to {@code audit-YYYY-MM-DD.<maxId>.acol}, and only then deletes
+ * them from the table in chunks. The highest id is part of the file name, so
+ * an interrupted run is completed by deleting the rows a file already holds
+ * before exporting the rest. Archives past
+ * {@code app.audit.retention.archive-months} are deleted.
+ */
+@Component
+public class AuditArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditArchiver.class);
+
+    private static final Pattern ARCHIVE_NAME = Pattern.compile("audit-(\\d{4}-\\d{2}-\\d{2})\\.(\\d+)\\.acol");
+
+    private static final String DELETE_CHUNK_SQL =
+            "delete from audit_logs where `timestamp` >= ? and `timestamp` < ? and id <= ? limit ?";
+
+    /** One archive file: a day's rows up to {@code maxId}. */
+    public record ArchiveFile(LocalDate day, long maxId, Path path) {
+    }
+
+    private final AuditLogRepository auditLogRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean enabled;
+    private final Path directory;
+    private final int hotMonths;
+    private final int archiveMonths;
+    private final int deleteChunk;
+
+    public AuditArchiver(AuditLogRepository auditLogRepository, JdbcTemplate jdbcTemplate,
+            EntityManager entityManager, PlatformTransactionManager transactionManager,
+            @Value("${app.audit.archive.enabled:true}") boolean enabled,
+            @Value("${app.audit.archive.dir:storage/audit-archive}") String directory,
+            @Value("${app.audit.retention.hot-months:6}") int hotMonths,
+            @Value("${app.audit.retention.archive-months:0}") int archiveMonths,
+            @Value("${app.audit.archive.delete-chunk:10000}") int deleteChunk) {
+        this.auditLogRepository = auditLogRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManager = entityManager;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.hotMonths = Math.max(1, hotMonths);
+        this.archiveMonths = archiveMonths;
+        this.deleteChunk = Math.max(1, deleteChunk);
+    }
+
+    /** Start of the hot window; older entries are archived. */
+    public LocalDateTime hotWindowStart() {
+        return YearMonth.now().minusMonths(hotMonths - 1L).atDay(1).atStartOfDay();
+    }
+
+    @Scheduled(cron = "${app.audit.archive.cron:0 30 3 * * *}")
+    public void archiveColdDays() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            LocalDateTime cutoff = hotWindowStart();
+            LocalDateTime oldest;
+            while ((oldest = auditLogRepository.findOldestTimestamp()) != null && oldest.isBefore(cutoff)) {
+                archiveDay(oldest.toLocalDate());
+            }
+            dropExpiredArchives();
+        } catch (Exception e) {
+            log.error("Audit archiving stopped: {}", e.getMessage());
+        }
+    }
+
+    /** Archive files, oldest day first. */
+    public List<ArchiveFile> listArchives() throws IOException {
+        List<ArchiveFile> archives = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return archives;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "audit-*.acol")) {
+            for (Path path : stream) {
+                Matcher m = ARCHIVE_NAME.matcher(path.getFileName().toString());
+                if (m.matches()) {
+                    archives.add(new ArchiveFile(LocalDate.parse(m.group(1)), Long.parseLong(m.group(2)), path));
+                }
+            }
+        }
+        archives.sort(Comparator.comparing(ArchiveFile::day).thenComparingLong(ArchiveFile::maxId));
+        return archives;
+    }
+
+    private void archiveDay(LocalDate day) throws IOException {
+        LocalDateTime from = day.atStartOfDay();
+        LocalDateTime to = day.plusDays(1).atStartOfDay();
+
+        // Rows a previous, interrupted run already wrote out
+        long archivedUpTo = 0;
+        for (ArchiveFile archive : listArchives()) {
+            if (archive.day().equals(day)) {
+                archivedUpTo = Math.max(archivedUpTo, archive.maxId());
+            }
+        }
+        if (archivedUpTo > 0) {
+            deleteRows(from, to, archivedUpTo);
+        }
+
+        Path tmp = directory.resolve("audit-" + day + ".acol.tmp");
+        long rows;
+        long maxId;
+        try (AuditArchiveWriter writer = new AuditArchiveWriter(tmp)) {
+            try {
+                readOnlyTransaction.executeWithoutResult(status -> {
+                    try (Stream<AuditLog> stream = auditLogRepository.streamForArchive(from, to)) {
+                        Iterator<AuditLog> it = stream.iterator();
+                        while (it.hasNext()) {
+                            AuditLog entry = it.next();
+                            writer.append(entry);
+                            entityManager.detach(entry);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.finish();
+            rows = writer.rowCount();
+            maxId = writer.maxId();
+        }
+        if (rows == 0) {
+            Files.delete(tmp);
+            return;
+        }
+        Path target = directory.resolve("audit-" + day + "." + maxId + ".acol");
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+
+        deleteRows(from, to, maxId);
+        log.info("Archived {} audit entries from {} to {}", rows, day, target.getFileName());
+    }
+
+    private void deleteRows(LocalDateTime from, LocalDateTime to, long maxId) {
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(DELETE_CHUNK_SQL, Timestamp.valueOf(from), Timestamp.valueOf(to), maxId,
+                    deleteChunk);
+        } while (deleted == deleteChunk);
+    }
+
+    private void dropExpiredArchives() throws IOException {
+        if (archiveMonths <= 0) {
+            return;
+        }
+        LocalDate keepFrom = YearMonth.now().minusMonths(hotMonths + archiveMonths - 1L).atDay(1);
+        for (ArchiveFile archive : listArchives()) {
+            if (archive.day().isBefore(keepFrom)) {
+                Files.delete(archive.path());
+                log.info("Deleted expired audit archive {}", archive.path().getFileName());
+            }
+        }
+    }
+}
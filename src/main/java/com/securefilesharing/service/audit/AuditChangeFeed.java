@@ -0,0 +1,207 @@
+package com.securefilesharing.service.audit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.securefilesharing.entity.AuditLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the in-memory audit views ({@link AuditStatistics},
+ * {@link AuditTimeSeries}, {@link AuditFilterDictionary}) current when several
+ * nodes share the database.
+ *
+ * Each node loads only its own journal segments, so every load record in
+ * {@code audit_journal_loads} also carries the per-minute counts the load
+ * added. A node applies its own loads directly; every
+ * {@code app.audit.change-feed.poll-ms} it reads the records of loads it has
+ * not applied yet, which are those of the other nodes. The views are warmed
+ * in one snapshot together with the names of the loads already in them, so
+ * no load is counted twice or missed.
+ *
+ * Everything here runs on the {@link AuditJournalLoader} thread, the only
+ * writer of the views.
+ */
+@Component
+public class AuditChangeFeed {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditChangeFeed.class);
+
+    // Re-read loads recorded a little before the previous poll: covers commits in flight and clock skew
+    private static final Duration POLL_OVERLAP = Duration.ofSeconds(60);
+
+    private static final int FETCH_CHUNK = 500;
+
+    private static final String RECENT_LOADS_SQL =
+            "select segment_name, loaded_at from audit_journal_loads where loaded_at >= ?";
+
+    private static final String CHANGES_SQL =
+            "select segment_name, changes from audit_journal_loads where segment_name in (%s)";
+
+    private final AuditStatistics statistics;
+    private final AuditTimeSeries timeSeries;
+    private final AuditFilterDictionary filterDictionary;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate snapshotTransaction;
+    private final ObjectMapper objectMapper;
+    private final Duration pollInterval;
+
+    // Segment name -> loaded_at of every recent load already in the views
+    private final Map<String, Instant> applied = new HashMap<>();
+
+    private boolean warm;
+    private Instant lastPoll;
+
+    public AuditChangeFeed(AuditStatistics statistics, AuditTimeSeries timeSeries,
+            AuditFilterDictionary filterDictionary, JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+            @Value("${app.audit.change-feed.poll-ms:2000}") long pollMillis) {
+        this.statistics = statistics;
+        this.timeSeries = timeSeries;
+        this.filterDictionary = filterDictionary;
+        this.jdbcTemplate = jdbcTemplate;
+        this.snapshotTransaction = new TransactionTemplate(transactionManager);
+        this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.snapshotTransaction.setReadOnly(true);
+        this.objectMapper = objectMapper;
+        this.pollInterval = Duration.ofMillis(Math.max(0, pollMillis));
+    }
+
+    /**
+     * Loads the views and the names of the loads they include from one
+     * snapshot. Idempotent; a failed attempt is repeated from scratch.
+     */
+    void ensureWarm() {
+        if (warm) {
+            return;
+        }
+        // Before the snapshot, so a backfill never counts the same rows twice
+        statistics.backfill();
+        Instant warmedAt = Instant.now();
+        applied.clear();
+        snapshotTransaction.executeWithoutResult(status -> {
+            // The first read fixes the snapshot the views are loaded from
+            readRecentLoads(warmedAt.minus(POLL_OVERLAP)).forEach(applied::put);
+            statistics.load();
+            timeSeries.warmUp();
+        });
+        filterDictionary.ensureSeeded();
+        lastPoll = warmedAt;
+        warm = true;
+    }
+
+    /** Applies loads committed by other nodes since the previous poll. */
+    void poll() {
+        Instant startedAt = Instant.now();
+        if (!warm || startedAt.isBefore(lastPoll.plus(pollInterval))) {
+            return;
+        }
+        Instant since = lastPoll.minus(POLL_OVERLAP);
+        Map<String, Instant> recent = readRecentLoads(since);
+        List<String> unseen = new ArrayList<>();
+        recent.forEach((name, loadedAt) -> {
+            if (!applied.containsKey(name)) {
+                unseen.add(name);
+            }
+        });
+        for (int from = 0; from < unseen.size(); from += FETCH_CHUNK) {
+            List<String> chunk = unseen.subList(from, Math.min(unseen.size(), from + FETCH_CHUNK));
+            String sql = String.format(CHANGES_SQL, String.join(",", Collections.nCopies(chunk.size(), "?")));
+            jdbcTemplate.query(sql, rs -> {
+                String name = rs.getString(1);
+                apply(name, rs.getString(2));
+                applied.put(name, recent.get(name));
+            }, chunk.toArray());
+        }
+        // Older loads fall outside every later poll
+        applied.values().removeIf(loadedAt -> loadedAt.isBefore(since));
+        lastPoll = startedAt;
+    }
+
+    /** Notes a load this node committed and has applied to the views itself. */
+    void appliedLocally(String segmentName, Instant loadedAt) {
+        applied.put(segmentName, loadedAt);
+    }
+
+    /** Per-minute counts of a load's entries, stored with its load record. */
+    String encode(List<AuditLog> entries) {
+        Map<List<Object>, Long> counts = new HashMap<>();
+        for (AuditLog entry : entries) {
+            long minute = epochMinute(entry.getTimestamp());
+            counts.merge(List.of(minute, AuditStatistics.DIMENSION_TOTAL, ""), 1L, Long::sum);
+            counts.merge(List.of(minute, AuditStatistics.DIMENSION_ACTION,
+                    AuditStatistics.valueOf(entry.getAction())), 1L, Long::sum);
+            counts.merge(List.of(minute, AuditStatistics.DIMENSION_STATUS,
+                    AuditStatistics.valueOf(entry.getStatus())), 1L, Long::sum);
+            counts.merge(List.of(minute, AuditStatistics.DIMENSION_RESOURCE_TYPE,
+                    AuditStatistics.valueOf(entry.getResourceType())), 1L, Long::sum);
+            counts.merge(List.of(minute, AuditStatistics.DIMENSION_USER,
+                    AuditStatistics.valueOf(entry.getUsername())), 1L, Long::sum);
+        }
+        // [[epochMinute, dimension, value, count], ...]
+        List<Object[]> rows = new ArrayList<>(counts.size());
+        counts.forEach((key, count) -> rows.add(new Object[] { key.get(0), key.get(1), key.get(2), count }));
+        try {
+            return objectMapper.writeValueAsString(rows);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Map<String, Instant> readRecentLoads(Instant since) {
+        Map<String, Instant> loads = new HashMap<>();
+        jdbcTemplate.query(RECENT_LOADS_SQL, rs -> {
+            loads.put(rs.getString(1), rs.getTimestamp(2).toInstant());
+        }, Timestamp.from(since));
+        return loads;
+    }
+
+    private void apply(String name, String changes) {
+        if (changes == null) {
+            return;
+        }
+        Object[][] rows;
+        try {
+            rows = objectMapper.readValue(changes, Object[][].class);
+        } catch (JsonProcessingException e) {
+            log.warn("Skipping unreadable changes of audit journal load {}: {}", name, e.getMessage());
+            return;
+        }
+        Map<AuditStatistics.Counter, Long> hourly = new HashMap<>();
+        for (Object[] row : rows) {
+            long minute = ((Number) row[0]).longValue();
+            String dimension = (String) row[1];
+            String value = (String) row[2];
+            long count = ((Number) row[3]).longValue();
+            LocalDateTime hour = LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC)
+                    .truncatedTo(ChronoUnit.HOURS);
+            hourly.merge(new AuditStatistics.Counter(hour, dimension, value), count, Long::sum);
+            timeSeries.add(minute, dimension, value, count);
+            filterDictionary.add(dimension, value);
+        }
+        statistics.applyAll(hourly);
+    }
+
+    static long epochMinute(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+}
@@ -0,0 +1,141 @@
+package com.securefilesharing.service.audit;
+
+import com.securefilesharing.security.services.UserDetailsImpl;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Who is acting and from where, captured once per request by
+ * {@link com.securefilesharing.security.AuditContextFilter}. Immutable, so
+ * it can be handed to other threads; audit entries copy their user and
+ * client fields from it instead of consulting the security and request
+ * context holders for every entry.
+ */
+public final class AuditContext {
+
+    public static final AuditContext EMPTY = new AuditContext(null, null, null, null, null);
+
+    private static final ThreadLocal<AuditContext> CURRENT = new ThreadLocal<>();
+
+    private final Long userId;
+    private final String username;
+    private final String role;
+    private final String ipAddress;
+    private final String userAgent;
+
+    public AuditContext(Long userId, String username, String role, String ipAddress, String userAgent) {
+        this.userId = userId;
+        this.username = username;
+        this.role = role;
+        this.ipAddress = ipAddress;
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * Context bound to the calling thread. Threads outside a filtered request
+     * (startup runners, background jobs) get one built from whatever the
+     * holders contain, which is usually {@link #EMPTY}.
+     */
+    public static AuditContext current() {
+        AuditContext context = CURRENT.get();
+        if (context != null) {
+            return context;
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        HttpServletRequest request = attributes instanceof ServletRequestAttributes servletAttributes
+                ? servletAttributes.getRequest()
+                : null;
+        return capture(request, SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    public static void bind(AuditContext context) {
+        CURRENT.set(context);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public static AuditContext capture(HttpServletRequest request, Authentication authentication) {
+        Long userId = null;
+        String username = null;
+        String role = null;
+
+        if (authentication != null
+                && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            Object principal = authentication.getPrincipal();
+            if (principal instanceof UserDetails userDetails) {
+                username = userDetails.getUsername();
+                role = roleOf(userDetails);
+                if (userDetails instanceof UserDetailsImpl impl) {
+                    userId = impl.getId();
+                }
+            } else if (principal != null && !"anonymousUser".equals(principal.toString())) {
+                username = principal.toString();
+            }
+        }
+
+        String ipAddress = null;
+        String userAgent = null;
+        if (request != null) {
+            ipAddress = clientIp(request);
+            userAgent = request.getHeader("User-Agent");
+        }
+
+        if (username == null && ipAddress == null && userAgent == null) {
+            return EMPTY;
+        }
+        return new AuditContext(userId, username, role, ipAddress, userAgent);
+    }
+
+    /** Client IP address with proxy support. */
+    public static String clientIp(HttpServletRequest request) {
+        String xfHeader = request.getHeader("X-Forwarded-For");
+        if (xfHeader != null && !xfHeader.isEmpty()) {
+            return xfHeader.split(",")[0].trim();
+        }
+        String xRealIp = request.getHeader("X-Real-IP");
+        if (xRealIp != null && !xRealIp.isEmpty()) {
+            return xRealIp;
+        }
+        return request.getRemoteAddr();
+    }
+
+    private static String roleOf(UserDetails userDetails) {
+        for (GrantedAuthority authority : userDetails.getAuthorities()) {
+            String name = authority.getAuthority();
+            if (name != null && name.startsWith("ROLE_")) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public String getIpAddress() {
+        return ipAddress;
+    }
+
+    public String getUserAgent() {
+        return userAgent;
+    }
+}
@@ -0,0 +1,122 @@
+package com.securefilesharing.service.audit;
+
+import com.securefilesharing.entity.AuditLog;
+import com.securefilesharing.repository.AuditLogRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Distinct actions and usernames for the auditor filter dropdowns.
+ *
+ * Seeded once from the all-time {@link AuditStatistics} counters, so archived
+ * entries are covered too, and extended by the {@link AuditJournalLoader}
+ * as segments are loaded and by the {@link AuditChangeFeed} with other
+ * nodes' loads. Usernames are kept sorted case-insensitively for prefix
+ * lookups. Until seeded, reads fall back to DISTINCT queries.
+ */
+@Component
+public class AuditFilterDictionary {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditFilterDictionary.class);
+
+    private final AuditLogRepository auditLogRepository;
+    private final AuditStatistics statistics;
+
+    private final ConcurrentSkipListSet<String> actions = new ConcurrentSkipListSet<>();
+
+    // Lower-cased username -> username as logged
+    private final ConcurrentSkipListMap<String, String> usernames = new ConcurrentSkipListMap<>();
+
+    private volatile boolean ready;
+
+    public AuditFilterDictionary(AuditLogRepository auditLogRepository, AuditStatistics statistics) {
+        this.auditLogRepository = auditLogRepository;
+        this.statistics = statistics;
+    }
+
+    // ==================== READS ====================
+
+    public List<String> actions() {
+        return ready ? new ArrayList<>(actions) : auditLogRepository.findDistinctActions();
+    }
+
+    public List<String> usernames() {
+        return ready ? new ArrayList<>(usernames.values()) : auditLogRepository.findDistinctUsernames();
+    }
+
+    /** Up to {@code limit} usernames starting with {@code prefix}, ignoring case, in name order. */
+    public List<String> usernamesStartingWith(String prefix, int limit) {
+        List<String> matches = new ArrayList<>();
+        if (!ready) {
+            return matches;
+        }
+        String from = key(prefix);
+        for (String username : usernames.tailMap(from).values()) {
+            if (matches.size() >= limit || !key(username).startsWith(from)) {
+                break;
+            }
+            matches.add(username);
+        }
+        return matches;
+    }
+
+    // ==================== MAINTENANCE (journal loader thread) ====================
+
+    /** Seeds the dictionaries from the loaded statistics counters. Idempotent. */
+    void ensureSeeded() {
+        if (ready) {
+            return;
+        }
+        statistics.countsBy(AuditStatistics.DIMENSION_ACTION).keySet().forEach(this::addAction);
+        statistics.countsBy(AuditStatistics.DIMENSION_USER).keySet().forEach(this::addUsername);
+        ready = true;
+        log.info("Audit filter dictionaries seeded: {} actions, {} usernames", actions.size(), usernames.size());
+    }
+
+    /** Adds the values of committed entries. */
+    void record(List<AuditLog> entries) {
+        if (!ready) {
+            // Not seeded yet: ensureSeeded will read these from the counters
+            return;
+        }
+        for (AuditLog entry : entries) {
+            addAction(entry.getAction());
+            addUsername(entry.getUsername());
+        }
+    }
+
+    /** Adds one value of a statistics dimension; only actions and usernames are kept. */
+    void add(String dimension, String value) {
+        if (!ready) {
+            return;
+        }
+        if (AuditStatistics.DIMENSION_ACTION.equals(dimension)) {
+            addAction(value);
+        } else if (AuditStatistics.DIMENSION_USER.equals(dimension)) {
+            addUsername(value);
+        }
+    }
+
+    private void addAction(String action) {
+        if (action != null && !action.isEmpty()) {
+            actions.add(action);
+        }
+    }
+
+    private void addUsername(String username) {
+        if (username != null && !username.isEmpty()) {
+            usernames.putIfAbsent(key(username), username);
+        }
+    }
+
+    private static String key(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
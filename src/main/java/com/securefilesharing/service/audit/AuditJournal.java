@@ -0,0 +1,283 @@
+package com.securefilesharing.service.audit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.securefilesharing.entity.AuditLog;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only local journal of audit entries, one JSON object per line.
+ *
+ * {@link #append} only writes to the active segment through the page cache;
+ * the segment is forced to disk every {@code app.audit.journal.sync-interval-ms}
+ * (group commit), so a caller never waits for an fsync. Segments are rotated
+ * when they reach {@code app.audit.journal.segment-max-bytes} or when the
+ * {@link AuditJournalLoader} seals the active one; sealed segments stay on
+ * disk until they have been loaded into {@code audit_logs}.
+ *
+ * The journal is bounded: once the segments waiting to be loaded reach
+ * {@code app.audit.journal.max-backlog-bytes}, appends wait up to
+ * {@code app.audit.journal.backpressure-timeout-ms} for the loader to catch up
+ * and then drop the entry, so a database outage cannot fill the disk.
+ *
+ * Segment names carry a random per-process instance id, so segments from
+ * several nodes never share a name in {@code audit_journal_loads}.
+ */
+@Component
+public class AuditJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditJournal.class);
+
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final long maxBacklogBytes;
+    private final long backpressureTimeoutMillis;
+    private final String instanceId = UUID.randomUUID().toString().replace("-", "").substring(0, 16);
+
+    private final Object lock = new Object();
+
+    // Guarded by lock
+    private FileChannel active;
+    private Path activePath;
+    private long activeSize;
+    private boolean dirty;
+    private long segmentCounter;
+    // Bytes in the active segment and in sealed segments not yet loaded
+    private long backlogBytes;
+    private long droppedEntries;
+
+    public AuditJournal(ObjectMapper objectMapper,
+            @Value("${app.audit.journal.dir:storage/audit-journal}") String directory,
+            @Value("${app.audit.journal.segment-max-bytes:67108864}") long maxSegmentBytes,
+            @Value("${app.audit.journal.max-backlog-bytes:1073741824}") long maxBacklogBytes,
+            @Value("${app.audit.journal.backpressure-timeout-ms:1000}") long backpressureTimeoutMillis) {
+        this.objectMapper = objectMapper;
+        this.directory = Paths.get(directory);
+        this.maxSegmentBytes = Math.max(1, maxSegmentBytes);
+        this.maxBacklogBytes = Math.max(this.maxSegmentBytes, maxBacklogBytes);
+        this.backpressureTimeoutMillis = Math.max(0, backpressureTimeoutMillis);
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        Files.createDirectories(directory);
+        synchronized (lock) {
+            // Segments left by the previous process count against the bound until they are loaded
+            for (Path segment : sealedSegments()) {
+                backlogBytes += Files.size(segment);
+            }
+            openSegmentLocked();
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        synchronized (lock) {
+            try {
+                active.force(false);
+                active.close();
+            } catch (IOException e) {
+                log.warn("Could not close audit journal segment {}: {}", activePath, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Appends an entry to the active segment. Waits while the journal is full
+     * and drops the entry if the loader does not catch up in time. Never throws.
+     */
+    public void append(AuditLog entry) {
+        clampToColumns(entry);
+        byte[] line;
+        try {
+            line = (objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            log.error("Could not serialize audit entry {}: {}", entry.getAction(), e.getMessage());
+            return;
+        }
+        synchronized (lock) {
+            if (!awaitRoomLocked(line.length)) {
+                droppedEntries++;
+                return;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(line);
+                while (buffer.hasRemaining()) {
+                    active.write(buffer);
+                }
+                activeSize += line.length;
+                backlogBytes += line.length;
+                dirty = true;
+                if (activeSize >= maxSegmentBytes) {
+                    rotateLocked();
+                }
+            } catch (IOException e) {
+                // Audit logging must not break main application flow
+                log.error("Could not append audit entry {}: {}", entry.getAction(), e.getMessage());
+            }
+        }
+    }
+
+    /** Group commit: forces everything appended since the last sync. */
+    @Scheduled(fixedDelayString = "${app.audit.journal.sync-interval-ms:50}")
+    public void sync() {
+        FileChannel channel;
+        long dropped;
+        synchronized (lock) {
+            dropped = droppedEntries;
+            droppedEntries = 0;
+            channel = dirty ? active : null;
+            dirty = false;
+        }
+        if (dropped > 0) {
+            log.error("Audit journal reached its backlog limit of {} bytes; dropped {} audit entries",
+                    maxBacklogBytes, dropped);
+        }
+        if (channel == null) {
+            return;
+        }
+        // Outside the lock so appends continue while the disk catches up
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // Rotated meanwhile; rotation forces the segment before closing it
+        } catch (IOException e) {
+            log.warn("Could not sync audit journal: {}", e.getMessage());
+        }
+    }
+
+    /** Seals the active segment if anything was appended to it. */
+    public void sealActive() {
+        synchronized (lock) {
+            if (activeSize == 0) {
+                return;
+            }
+            try {
+                rotateLocked();
+            } catch (IOException e) {
+                log.error("Could not rotate audit journal segment {}: {}", activePath, e.getMessage());
+            }
+        }
+    }
+
+    /** Sealed segments, oldest first. */
+    public List<Path> sealedSegments() throws IOException {
+        Path current;
+        synchronized (lock) {
+            current = activePath;
+        }
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stream) {
+                if (!segment.equals(current)) {
+                    segments.add(segment);
+                }
+            }
+        }
+        // Names start with the creation time, zero-padded, so they sort chronologically
+        segments.sort(null);
+        return segments;
+    }
+
+    /** Called by the loader once a sealed segment of {@code bytes} has left the journal directory. */
+    public void released(long bytes) {
+        synchronized (lock) {
+            backlogBytes = Math.max(0, backlogBytes - bytes);
+            lock.notifyAll();
+        }
+    }
+
+    /** Creation time of a segment in epoch milliseconds, taken from its name. */
+    static long createdAtMillis(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), SEGMENT_PREFIX.length() + 13));
+    }
+
+    // Backpressure: hold the caller while the loader is behind, up to the timeout
+    private boolean awaitRoomLocked(int length) {
+        if (backlogBytes + length <= maxBacklogBytes) {
+            return true;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backpressureTimeoutMillis);
+        try {
+            while (backlogBytes + length > maxBacklogBytes) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void rotateLocked() throws IOException {
+        active.force(false);
+        active.close();
+        dirty = false;
+        openSegmentLocked();
+    }
+
+    private void openSegmentLocked() throws IOException {
+        activePath = directory.resolve(nextSegmentName());
+        active = FileChannel.open(activePath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        activeSize = 0;
+    }
+
+    private String nextSegmentName() {
+        return String.format("%s%013d-%s-%06d%s", SEGMENT_PREFIX, System.currentTimeMillis(), instanceId,
+                ++segmentCounter, SEGMENT_SUFFIX);
+    }
+
+    // Cuts string fields to their audit_logs column sizes so the row always fits
+    private static void clampToColumns(AuditLog entry) {
+        entry.setUsername(clamp(entry.getUsername(), AuditLog.STRING_LENGTH));
+        entry.setRole(clamp(entry.getRole(), AuditLog.STRING_LENGTH));
+        entry.setAction(clamp(entry.getAction(), AuditLog.STRING_LENGTH));
+        entry.setResourceType(clamp(entry.getResourceType(), AuditLog.STRING_LENGTH));
+        entry.setFileName(clamp(entry.getFileName(), AuditLog.FILE_NAME_LENGTH));
+        entry.setStatus(clamp(entry.getStatus(), AuditLog.STRING_LENGTH));
+        entry.setIpAddress(clamp(entry.getIpAddress(), AuditLog.STRING_LENGTH));
+        entry.setUserAgent(clamp(entry.getUserAgent(), AuditLog.STRING_LENGTH));
+        entry.setDetails(clamp(entry.getDetails(), AuditLog.DETAILS_LENGTH));
+    }
+
+    private static String clamp(String value, int maxLength) {
+        if (value == null || value.length() <= maxLength) {
+            return value;
+        }
+        // Do not split a surrogate pair
+        int end = Character.isHighSurrogate(value.charAt(maxLength - 1)) ? maxLength - 1 : maxLength;
+        return value.substring(0, end);
+    }
+}
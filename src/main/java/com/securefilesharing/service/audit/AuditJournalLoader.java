@@ -0,0 +1,315 @@
+package com.securefilesharing.service.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.securefilesharing.entity.AuditLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk-loads sealed {@link AuditJournal} segments into {@code audit_logs}.
+ *
+ * Each segment is inserted in multi-row batches inside one transaction that
+ * also records the segment name in {@code audit_journal_loads}; the file is
+ * deleted only afterwards. The segment's {@link AuditStatistics} counters are
+ * added in the same transaction; the {@link AuditTimeSeries} minute buckets
+ * and {@link AuditFilterDictionary} values after it commits. The load record
+ * carries the per-minute counts for the {@link AuditChangeFeed}, which
+ * applies the loads of other nodes on this thread. A segment left
+ * behind by a crash is therefore either loaded again in full or recognised
+ * as loaded and just deleted. The first run after startup replays everything
+ * the previous process left.
+ *
+ * If the batch insert fails on bad data, the segment is loaded again row by
+ * row with a savepoint per row; rows the database still rejects are written
+ * to a {@code .rejected} file in the dead-letter directory. A segment that
+ * fails even then is moved there whole, so it never blocks later segments.
+ * Connection and other transient failures leave the segment to be retried.
+ */
+@Component
+public class AuditJournalLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditJournalLoader.class);
+
+    private static final String RECORD_LOAD_SQL =
+            "insert into audit_journal_loads (segment_name, entry_count, loaded_at, changes) values (?, ?, ?, ?)";
+
+    private static final String IS_LOADED_SQL =
+            "select count(*) from audit_journal_loads where segment_name = ?";
+
+    private static final String PRUNE_LOADS_SQL = "delete from audit_journal_loads where loaded_at < ? limit ?";
+
+    private static final int PRUNE_CHUNK = 10000;
+
+    // Sealed segments waiting beyond this point mean the database is not keeping up
+    private static final int BACKLOG_WARN_SEGMENTS = 100;
+
+    private final AuditJournal journal;
+    private final AuditLogJdbcInserter inserter;
+    private final AuditStatistics statistics;
+    private final AuditTimeSeries timeSeries;
+    private final AuditFilterDictionary filterDictionary;
+    private final AuditChangeFeed changeFeed;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final Path deadLetterDirectory;
+    private final Duration loadRecordRetention;
+
+    public AuditJournalLoader(AuditJournal journal, AuditLogJdbcInserter inserter, AuditStatistics statistics,
+            AuditTimeSeries timeSeries, AuditFilterDictionary filterDictionary, AuditChangeFeed changeFeed,
+            JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+            @Value("${app.audit.journal.load-batch-size:1000}") int batchSize,
+            @Value("${app.audit.journal.dead-letter-dir:storage/audit-journal-dead-letter}") String deadLetterDirectory,
+            @Value("${app.audit.journal.load-record-retention-hours:168}") long loadRecordRetentionHours) {
+        this.journal = journal;
+        this.inserter = inserter;
+        this.statistics = statistics;
+        this.timeSeries = timeSeries;
+        this.filterDictionary = filterDictionary;
+        this.changeFeed = changeFeed;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.batchSize = Math.max(1, batchSize);
+        this.deadLetterDirectory = Paths.get(deadLetterDirectory);
+        this.loadRecordRetention = Duration.ofHours(Math.max(1, loadRecordRetentionHours));
+    }
+
+    @Scheduled(fixedDelayString = "${app.audit.journal.load-interval-ms:1000}")
+    public void loadSealedSegments() {
+        journal.sealActive();
+        try {
+            // Before any segment is loaded, so a backfill never counts the same rows twice
+            changeFeed.ensureWarm();
+        } catch (Exception e) {
+            log.warn("Could not load audit statistics: {}", e.getMessage());
+            return;
+        }
+        try {
+            changeFeed.poll();
+        } catch (Exception e) {
+            log.warn("Could not read audit loads of other nodes: {}", e.getMessage());
+        }
+        List<Path> segments;
+        try {
+            segments = journal.sealedSegments();
+        } catch (IOException e) {
+            log.error("Could not list audit journal segments: {}", e.getMessage());
+            return;
+        }
+        if (segments.size() > BACKLOG_WARN_SEGMENTS) {
+            log.warn("{} audit journal segments are waiting to be loaded", segments.size());
+        }
+        for (Path segment : segments) {
+            // Keep the order: stop at the first failure and retry on the next run
+            if (!load(segment)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Deletes load records older than the retention. A segment is deleted
+     * right after its load commits, so its record is only needed to recognise
+     * a segment a crash left behind; {@link #load} never replays a segment
+     * older than the retention, because its record may already be gone.
+     */
+    @Scheduled(cron = "${app.audit.journal.load-record-prune-cron:0 15 * * * *}")
+    public void pruneLoadRecords() {
+        Timestamp cutoff = Timestamp.from(Instant.now().minus(loadRecordRetention));
+        try {
+            int total = 0;
+            int deleted;
+            do {
+                deleted = jdbcTemplate.update(PRUNE_LOADS_SQL, cutoff, PRUNE_CHUNK);
+                total += deleted;
+            } while (deleted == PRUNE_CHUNK);
+            if (total > 0) {
+                log.debug("Pruned {} audit journal load records", total);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not prune audit journal load records: {}", e.getMessage());
+        }
+    }
+
+    private boolean load(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            long size = Files.size(segment);
+            Integer loaded = jdbcTemplate.queryForObject(IS_LOADED_SQL, Integer.class, name);
+            if (loaded == null || loaded == 0) {
+                if (isPastLoadRecordRetention(segment)) {
+                    // A segment is loaded no earlier than it was created, so a record of it younger than the
+                    // retention would still exist; without one it may have been loaded and pruned since
+                    moveToDeadLetter(segment, "it is older than the load record retention and may already be loaded");
+                    journal.released(size);
+                    return true;
+                }
+                List<AuditLog> entries = read(segment);
+                Loaded result;
+                try {
+                    result = insert(name, entries, false);
+                } catch (DataAccessException e) {
+                    if (!isDataError(e)) {
+                        throw e;
+                    }
+                    log.warn("Batch load of audit journal segment {} failed, retrying row by row: {}",
+                            name, e.getMessage());
+                    try {
+                        result = insert(name, entries, true);
+                    } catch (DataAccessException rowError) {
+                        if (!isDataError(rowError)) {
+                            throw rowError;
+                        }
+                        moveToDeadLetter(segment, rowError.getMessage());
+                        journal.released(size);
+                        return true;
+                    }
+                }
+                statistics.applyAll(result.counts());
+                timeSeries.record(result.entries());
+                filterDictionary.record(result.entries());
+                changeFeed.appliedLocally(name, result.loadedAt());
+                log.debug("Loaded {} audit entries from {}", result.entries().size(), name);
+            }
+            Files.delete(segment);
+            journal.released(size);
+            return true;
+        } catch (Exception e) {
+            log.warn("Could not load audit journal segment {}: {}", name, e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean isPastLoadRecordRetention(Path segment) {
+        return AuditJournal.createdAtMillis(segment) < Instant.now().minus(loadRecordRetention).toEpochMilli();
+    }
+
+    private record Loaded(List<AuditLog> entries, Map<AuditStatistics.Counter, Long> counts, Instant loadedAt) {
+    }
+
+    // Inserts the segment, its statistics and the record that it was loaded, in one transaction
+    private Loaded insert(String name, List<AuditLog> entries, boolean rowByRow) {
+        return transactionTemplate.execute(status -> {
+            List<AuditLog> inserted = entries;
+            if (rowByRow) {
+                inserted = insertRowByRow(name, entries);
+            } else {
+                for (int from = 0; from < entries.size(); from += batchSize) {
+                    inserter.insert(entries.subList(from, Math.min(entries.size(), from + batchSize)));
+                }
+            }
+            Map<AuditStatistics.Counter, Long> counts = statistics.countEntries(inserted);
+            statistics.persist(counts);
+            Instant loadedAt = Instant.now();
+            jdbcTemplate.update(RECORD_LOAD_SQL, name, inserted.size(), Timestamp.from(loadedAt),
+                    changeFeed.encode(inserted));
+            return new Loaded(inserted, counts, loadedAt);
+        });
+    }
+
+    // Runs in the load transaction; a rejected row is rolled back to its savepoint and dead-lettered
+    private List<AuditLog> insertRowByRow(String name, List<AuditLog> entries) {
+        List<AuditLog> inserted = new ArrayList<>();
+        List<AuditLog> rejected = new ArrayList<>();
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            for (AuditLog entry : entries) {
+                Savepoint savepoint = connection.setSavepoint();
+                try {
+                    inserter.insert(List.of(entry));
+                    connection.releaseSavepoint(savepoint);
+                    inserted.add(entry);
+                } catch (DataAccessException e) {
+                    if (!isDataError(e)) {
+                        throw e;
+                    }
+                    connection.rollback(savepoint);
+                    rejected.add(entry);
+                    log.warn("Audit entry {} at {} rejected: {}", entry.getAction(), entry.getTimestamp(),
+                            e.getMessage());
+                }
+            }
+            return null;
+        });
+        if (!rejected.isEmpty()) {
+            // Written before the commit; a retry after a failed commit just rewrites it
+            writeRejected(name, rejected);
+        }
+        return inserted;
+    }
+
+    private void writeRejected(String name, List<AuditLog> rejected) {
+        StringBuilder lines = new StringBuilder();
+        try {
+            for (AuditLog entry : rejected) {
+                lines.append(objectMapper.writeValueAsString(entry)).append('\n');
+            }
+            Files.createDirectories(deadLetterDirectory);
+            Files.writeString(deadLetterDirectory.resolve(name + ".rejected"), lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void moveToDeadLetter(Path segment, String reason) throws IOException {
+        Files.createDirectories(deadLetterDirectory);
+        Path target = deadLetterDirectory.resolve(segment.getFileName());
+        Files.move(segment, target, StandardCopyOption.REPLACE_EXISTING);
+        log.error("Audit journal segment {} could not be loaded and was moved to {}: {}",
+                segment.getFileName(), target, reason);
+    }
+
+    // Bad data fails the same way on every retry; lost connections and timeouts do not
+    private static boolean isDataError(DataAccessException e) {
+        return e instanceof NonTransientDataAccessException
+                && !(e instanceof NonTransientDataAccessResourceException);
+    }
+
+    private List<AuditLog> read(Path segment) throws IOException {
+        List<AuditLog> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    AuditLog entry = objectMapper.readValue(line, AuditLog.class);
+                    entry.setId(null);
+                    entries.add(entry);
+                } catch (IOException e) {
+                    // A line torn by a crash mid-append; nothing to recover from it
+                    log.warn("Skipping unreadable audit entry in {}: {}", segment.getFileName(), e.getMessage());
+                }
+            }
+        }
+        return entries;
+    }
+}
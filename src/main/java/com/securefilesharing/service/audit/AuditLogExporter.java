@@ -0,0 +1,92 @@
+package com.securefilesharing.service.audit;
+
+import com.securefilesharing.entity.AuditLog;
+import jakarta.persistence.EntityManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams audit logs to the client as CSV in constant memory.
+ *
+ * The query runs in a read-only transaction on the response thread and is
+ * consumed row by row; each entity is detached once written so the
+ * persistence context does not grow with the export. The header goes out
+ * before the first row is fetched.
+ */
+@Component
+public class AuditLogExporter {
+
+    // Rows between explicit flushes, so a slow query still shows progress on the wire
+    private static final int FLUSH_EVERY_ROWS = 1000;
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    /** Formats one CSV line (without the newline) for an entry. */
+    @FunctionalInterface
+    public interface RowWriter {
+        void write(AuditLog log, Writer out) throws IOException;
+    }
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public AuditLogExporter(EntityManager entityManager, PlatformTransactionManager transactionManager) {
+        this.entityManager = entityManager;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    public StreamingResponseBody csv(String header, Supplier<Stream<AuditLog>> query, RowWriter rowWriter,
+            boolean gzip) {
+        return out -> {
+            GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, BUFFER_BYTES, true) : null;
+            Writer writer = new BufferedWriter(new OutputStreamWriter(compressed != null ? compressed : out,
+                    StandardCharsets.UTF_8), BUFFER_BYTES);
+            writer.write(header);
+            writer.write('\n');
+            writer.flush();
+            try {
+                readOnlyTransaction.executeWithoutResult(status -> {
+                    try (Stream<AuditLog> rows = query.get()) {
+                        writeRows(rows.iterator(), writer, rowWriter);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.flush();
+            if (compressed != null) {
+                compressed.finish();
+            }
+        };
+    }
+
+    private void writeRows(Iterator<AuditLog> rows, Writer writer, RowWriter rowWriter) throws IOException {
+        int sinceFlush = 0;
+        while (rows.hasNext()) {
+            AuditLog log = rows.next();
+            rowWriter.write(log, writer);
+            writer.write('\n');
+            entityManager.detach(log);
+            if (++sinceFlush == FLUSH_EVERY_ROWS) {
+                writer.flush();
+                sinceFlush = 0;
+            }
+        }
+    }
+}
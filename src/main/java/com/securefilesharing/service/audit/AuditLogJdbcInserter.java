@@ -0,0 +1,63 @@
+package com.securefilesharing.service.audit;
+
+import com.securefilesharing.entity.AuditLog;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Inserts {@link AuditLog} rows with one JDBC batch per call. With
+ * {@code rewriteBatchedStatements=true} on the MySQL URL the driver sends each
+ * batch as a multi-row INSERT. Ids come from the table's auto-increment.
+ */
+@Component
+public class AuditLogJdbcInserter {
+
+    private static final String INSERT_SQL = "insert into audit_logs (user_id, username, role, action, "
+            + "resource_type, resource_id, file_name, status, ip_address, user_agent, timestamp, details, "
+            + "file_id, file_owner_id, target_user_id) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AuditLogJdbcInserter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void insert(List<AuditLog> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), AuditLogJdbcInserter::bind);
+    }
+
+    private static void bind(PreparedStatement ps, AuditLog log) throws SQLException {
+        setLong(ps, 1, log.getUserId());
+        ps.setString(2, log.getUsername());
+        ps.setString(3, log.getRole());
+        ps.setString(4, log.getAction());
+        ps.setString(5, log.getResourceType());
+        setLong(ps, 6, log.getResourceId());
+        ps.setString(7, log.getFileName());
+        ps.setString(8, log.getStatus());
+        ps.setString(9, log.getIpAddress());
+        ps.setString(10, log.getUserAgent());
+        ps.setTimestamp(11, Timestamp.valueOf(log.getTimestamp()));
+        ps.setString(12, log.getDetails());
+        setLong(ps, 13, log.getFileId());
+        setLong(ps, 14, log.getFileOwnerId());
+        setLong(ps, 15, log.getTargetUserId());
+    }
+
+    private static void setLong(PreparedStatement ps, int index, Long value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.BIGINT);
+        } else {
+            ps.setLong(index, value);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.securefilesharing.service.audit;
+
+import com.securefilesharing.entity.AuditLog;
+import com.securefilesharing.repository.AuditLogRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Audit log counters served from memory.
+ *
+ * Counts per hour and per action, status, resource type and user are kept in
+ * {@code audit_stat_counters}. The {@link AuditJournalLoader} adds each
+ * segment's counts in the same transaction that inserts its rows, so the
+ * table always matches {@code audit_logs}, and then applies them here. On the
+ * first start the table is backfilled from {@code audit_logs} with one
+ * aggregate query. Until the counters are loaded, reads fall back to count
+ * queries.
+ */
+@Component
+public class AuditStatistics {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditStatistics.class);
+
+    public static final String DIMENSION_TOTAL = "total";
+    public static final String DIMENSION_ACTION = "action";
+    public static final String DIMENSION_STATUS = "status";
+    public static final String DIMENSION_RESOURCE_TYPE = "resource_type";
+    public static final String DIMENSION_USER = "user";
+
+    // Dimension -> audit_logs column it counts (null: every row)
+    private static final Map<String, String> DIMENSION_COLUMNS = new LinkedHashMap<>();
+
+    static {
+        DIMENSION_COLUMNS.put(DIMENSION_TOTAL, null);
+        DIMENSION_COLUMNS.put(DIMENSION_ACTION, "action");
+        DIMENSION_COLUMNS.put(DIMENSION_STATUS, "status");
+        DIMENSION_COLUMNS.put(DIMENSION_RESOURCE_TYPE, "resource_type");
+        DIMENSION_COLUMNS.put(DIMENSION_USER, "username");
+    }
+
+    private static final String UPSERT_SQL = "insert into audit_stat_counters "
+            + "(bucket_hour, dimension, dimension_value, entry_count) values (?, ?, ?, ?) "
+            + "on duplicate key update entry_count = entry_count + values(entry_count)";
+
+    private static final String BACKFILL_SQL = "insert into audit_stat_counters "
+            + "(bucket_hour, dimension, dimension_value, entry_count) "
+            + "select timestamp(date_format(`timestamp`, '%%Y-%%m-%%d %%H:00:00')) as hour_start, '%s', "
+            + "coalesce(%s, '') as val, count(*) from audit_logs group by hour_start, val";
+
+    private static final String HAS_DIMENSION_SQL =
+            "select count(*) from (select 1 from audit_stat_counters where dimension = ? limit 1) d";
+
+    private static final String RANGE_SQL = "select bucket_hour, dimension_value, entry_count "
+            + "from audit_stat_counters where dimension = ? and bucket_hour >= ? and bucket_hour < ?";
+
+    private static final String LOAD_SQL =
+            "select bucket_hour, dimension, dimension_value, entry_count from audit_stat_counters";
+
+    /** One counter cell; the value is empty for the total and for missing values. */
+    public record Counter(LocalDateTime bucketHour, String dimension, String value) {
+    }
+
+    private final AuditLogRepository auditLogRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    // "dimension:value" -> all-time count
+    private final ConcurrentHashMap<String, LongAdder> totals = new ConcurrentHashMap<>();
+
+    // Start of hour -> entries logged in that hour
+    private final ConcurrentSkipListMap<LocalDateTime, LongAdder> hourly = new ConcurrentSkipListMap<>();
+
+    private volatile boolean ready;
+
+    public AuditStatistics(AuditLogRepository auditLogRepository, JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager) {
+        this.auditLogRepository = auditLogRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // ==================== READS ====================
+
+    public long totalCount() {
+        return ready ? get(DIMENSION_TOTAL, "") : auditLogRepository.count();
+    }
+
+    public long countByStatus(String status) {
+        return ready ? get(DIMENSION_STATUS, status) : auditLogRepository.countByStatus(status);
+    }
+
+    public long countByAction(String action) {
+        return ready ? get(DIMENSION_ACTION, action) : auditLogRepository.countByAction(action);
+    }
+
+    /** All-time counts per value of a dimension, or an empty map while the counters load. */
+    public Map<String, Long> countsBy(String dimension) {
+        Map<String, Long> counts = new TreeMap<>();
+        if (!ready) {
+            return counts;
+        }
+        String prefix = dimension + ":";
+        totals.forEach((key, count) -> {
+            if (key.startsWith(prefix)) {
+                counts.put(key.substring(prefix.length()), count.sum());
+            }
+        });
+        return counts;
+    }
+
+    /** Entries logged from the start of the hour containing {@code since}; -1 while the counters load. */
+    public long countSince(LocalDateTime since) {
+        if (!ready) {
+            return -1;
+        }
+        long sum = 0;
+        for (LongAdder count : hourly.tailMap(since.truncatedTo(ChronoUnit.HOURS)).values()) {
+            sum += count.sum();
+        }
+        return sum;
+    }
+
+    private long get(String dimension, String value) {
+        LongAdder count = totals.get(dimension + ":" + (value == null ? "" : value));
+        return count == null ? 0 : count.sum();
+    }
+
+    // ==================== MAINTENANCE (journal loader thread) ====================
+
+    /** Hourly counts of one dimension in [from, to), straight from the counter table. */
+    public List<Map.Entry<Counter, Long>> hourlyCounts(String dimension, LocalDateTime from, LocalDateTime to) {
+        List<Map.Entry<Counter, Long>> rows = new ArrayList<>();
+        jdbcTemplate.query(RANGE_SQL, rs -> {
+            rows.add(Map.entry(new Counter(rs.getTimestamp(1).toLocalDateTime(), dimension, rs.getString(2)),
+                    rs.getLong(3)));
+        }, dimension, Timestamp.valueOf(from), Timestamp.valueOf(to));
+        return rows;
+    }
+
+    public static boolean isDimension(String dimension) {
+        return DIMENSION_COLUMNS.containsKey(dimension);
+    }
+
+    /** Fills counters for dimensions missing from the counter table, in its own transaction. */
+    void backfill() {
+        transactionTemplate.executeWithoutResult(status -> backfillMissing());
+    }
+
+    /**
+     * (Re)loads the counter table into memory. Called by {@link AuditChangeFeed}
+     * inside the snapshot it warms every view from.
+     */
+    void load() {
+        // Start clean in case an earlier attempt failed halfway through
+        totals.clear();
+        hourly.clear();
+        jdbcTemplate.query(LOAD_SQL, rs -> {
+            apply(new Counter(rs.getTimestamp(1).toLocalDateTime(), rs.getString(2), rs.getString(3)),
+                    rs.getLong(4));
+        });
+        ready = true;
+        log.info("Audit statistics loaded: {} entries", get(DIMENSION_TOTAL, ""));
+    }
+
+    // Covers a new table as well as dimensions added after the table was first filled
+    private void backfillMissing() {
+        int rows = 0;
+        for (Map.Entry<String, String> dimension : DIMENSION_COLUMNS.entrySet()) {
+            Integer present = jdbcTemplate.queryForObject(HAS_DIMENSION_SQL, Integer.class, dimension.getKey());
+            if (present == null || present == 0) {
+                rows += jdbcTemplate.update(String.format(BACKFILL_SQL, dimension.getKey(),
+                        dimension.getValue() == null ? "null" : dimension.getValue()));
+            }
+        }
+        if (rows > 0) {
+            log.info("Backfilled {} audit statistic counters from audit_logs", rows);
+        }
+    }
+
+    /** Counter increments for a batch of entries about to be inserted. */
+    Map<Counter, Long> countEntries(List<AuditLog> entries) {
+        Map<Counter, Long> deltas = new HashMap<>();
+        for (AuditLog entry : entries) {
+            LocalDateTime hour = entry.getTimestamp().truncatedTo(ChronoUnit.HOURS);
+            deltas.merge(new Counter(hour, DIMENSION_TOTAL, ""), 1L, Long::sum);
+            deltas.merge(new Counter(hour, DIMENSION_ACTION, valueOf(entry.getAction())), 1L, Long::sum);
+            deltas.merge(new Counter(hour, DIMENSION_STATUS, valueOf(entry.getStatus())), 1L, Long::sum);
+            deltas.merge(new Counter(hour, DIMENSION_RESOURCE_TYPE, valueOf(entry.getResourceType())), 1L,
+                    Long::sum);
+            deltas.merge(new Counter(hour, DIMENSION_USER, valueOf(entry.getUsername())), 1L, Long::sum);
+        }
+        return deltas;
+    }
+
+    /** Adds the increments to the counter table; call inside the transaction that inserts the rows. */
+    void persist(Map<Counter, Long> deltas) {
+        List<Object[]> args = new ArrayList<>(deltas.size());
+        deltas.forEach((counter, count) -> args.add(new Object[] {
+                Timestamp.valueOf(counter.bucketHour()), counter.dimension(), counter.value(), count }));
+        jdbcTemplate.batchUpdate(UPSERT_SQL, args);
+    }
+
+    /** Applies committed increments to the in-memory counters. */
+    void applyAll(Map<Counter, Long> deltas) {
+        if (!ready) {
+            // Not loaded yet: load will read these from the table
+            return;
+        }
+        deltas.forEach(this::apply);
+    }
+
+    private void apply(Counter counter, long count) {
+        totals.computeIfAbsent(counter.dimension() + ":" + counter.value(), key -> new LongAdder()).add(count);
+        if (DIMENSION_TOTAL.equals(counter.dimension())) {
+            hourly.computeIfAbsent(counter.bucketHour(), key -> new LongAdder()).add(count);
+        }
+    }
+
+    static String valueOf(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,49 @@
+package com.securefilesharing.service.audit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Turns username / fileName substring filters into FULLTEXT phrase queries.
+ *
+ * audit_logs carries ngram FULLTEXT indexes on both columns (created by
+ * AuditFullTextIndexRunner). A quoted phrase over bigrams narrows the rows
+ * through the index; the repository keeps the LIKE condition as the exact
+ * check. Until the indexes exist, or for one-character terms that have no
+ * bigram, {@link #matchPhrase} returns null and the query falls back to LIKE.
+ */
+@Component
+public class AuditTextSearch {
+
+    // Server default ngram_token_size; shorter terms produce no tokens
+    private static final int NGRAM_TOKEN_SIZE = 2;
+
+    private final boolean enabled;
+
+    private volatile boolean indexed;
+
+    public AuditTextSearch(@Value("${app.audit.search.fulltext.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void markIndexed() {
+        this.indexed = true;
+    }
+
+    /** Boolean-mode phrase for a normalized filter, or null when the index cannot help. */
+    public String matchPhrase(String term) {
+        if (!enabled || !indexed || term == null) {
+            return null;
+        }
+        // Quotes are the only operator inside a phrase
+        String phrase = term.replace('"', ' ').trim();
+        if (phrase.length() < NGRAM_TOKEN_SIZE) {
+            return null;
+        }
+        return '"' + phrase + '"';
+    }
+}
@@ -0,0 +1,224 @@
+package com.securefilesharing.service.audit;
+
+import com.securefilesharing.entity.AuditLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Audit activity over time, bucketed per minute, hour or day.
+ *
+ * Minute buckets for the recent window live in an in-memory ring, warmed from
+ * {@code audit_logs} on startup and fed by the {@link AuditJournalLoader} as
+ * segments are loaded and by the {@link AuditChangeFeed} with other nodes'
+ * loads. Hour and day buckets are read from the hourly
+ * {@code audit_stat_counters} rollups kept by {@link AuditStatistics}, so no
+ * query ever touches {@code audit_logs} rows.
+ */
+@Component
+public class AuditTimeSeries {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditTimeSeries.class);
+
+    public static final String GRANULARITY_MINUTE = "minute";
+    public static final String GRANULARITY_HOUR = "hour";
+    public static final String GRANULARITY_DAY = "day";
+
+    // Largest series one request may ask for
+    private static final int MAX_BUCKETS = 2000;
+
+    private static final String WARM_SQL = "select timestamp(date_format(`timestamp`, '%%Y-%%m-%%d %%H:%%i:00')) "
+            + "as minute_start, coalesce(%s, '') as val, count(*) from audit_logs where `timestamp` >= ? "
+            + "group by minute_start, val";
+
+    private static final class MinuteBucket {
+        final long minute;
+        final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+        MinuteBucket(long minute) {
+            this.minute = minute;
+        }
+    }
+
+    private final AuditStatistics statistics;
+    private final JdbcTemplate jdbcTemplate;
+    private final int windowMinutes;
+
+    // Slot = epoch minute modulo the window; written only by the journal loader thread
+    private final AtomicReferenceArray<MinuteBucket> ring;
+
+    private volatile boolean warm;
+
+    public AuditTimeSeries(AuditStatistics statistics, JdbcTemplate jdbcTemplate,
+            @Value("${app.audit.timeseries.minute-window:1440}") int windowMinutes) {
+        this.statistics = statistics;
+        this.jdbcTemplate = jdbcTemplate;
+        this.windowMinutes = Math.max(1, windowMinutes);
+        this.ring = new AtomicReferenceArray<>(this.windowMinutes);
+    }
+
+    /**
+     * Counts per bucket in [from, to), both aligned down to the granularity.
+     * Each bucket has its start, total and, unless the dimension is
+     * {@code total}, the counts per value.
+     */
+    public List<Map<String, Object>> series(String granularity, String dimension, LocalDateTime from,
+            LocalDateTime to) {
+        if (!AuditStatistics.isDimension(dimension)) {
+            throw new IllegalArgumentException("Unknown dimension: " + dimension);
+        }
+        ChronoUnit unit = unitOf(granularity);
+        LocalDateTime start = from.truncatedTo(unit);
+        LocalDateTime end = to.truncatedTo(unit);
+        if (!start.isBefore(end)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        if (unit.between(start, end) > MAX_BUCKETS) {
+            throw new IllegalArgumentException("Range spans more than " + MAX_BUCKETS + " " + granularity
+                    + " buckets");
+        }
+
+        Map<LocalDateTime, Map<String, Long>> buckets = new TreeMap<>();
+        for (LocalDateTime t = start; t.isBefore(end); t = t.plus(1, unit)) {
+            buckets.put(t, new TreeMap<>());
+        }
+        if (unit == ChronoUnit.MINUTES) {
+            fillFromRing(buckets, dimension, start);
+        } else {
+            for (Map.Entry<AuditStatistics.Counter, Long> row : statistics.hourlyCounts(dimension, start, end)) {
+                buckets.get(row.getKey().bucketHour().truncatedTo(unit))
+                        .merge(row.getKey().value(), row.getValue(), Long::sum);
+            }
+        }
+
+        List<Map<String, Object>> series = new ArrayList<>(buckets.size());
+        buckets.forEach((bucketStart, counts) -> {
+            Map<String, Object> bucket = new LinkedHashMap<>();
+            bucket.put("start", bucketStart);
+            bucket.put("total", counts.values().stream().mapToLong(Long::longValue).sum());
+            if (!AuditStatistics.DIMENSION_TOTAL.equals(dimension)) {
+                bucket.put("counts", counts);
+            }
+            series.add(bucket);
+        });
+        return series;
+    }
+
+    private void fillFromRing(Map<LocalDateTime, Map<String, Long>> buckets, String dimension,
+            LocalDateTime start) {
+        if (!warm) {
+            throw new IllegalStateException("Minute buckets are still loading");
+        }
+        long oldest = epochMinute(LocalDateTime.now()) - windowMinutes + 1;
+        if (epochMinute(start) < oldest) {
+            throw new IllegalArgumentException("Minute buckets cover only the last " + windowMinutes + " minutes");
+        }
+        String prefix = dimension + ":";
+        buckets.forEach((bucketStart, counts) -> {
+            long minute = epochMinute(bucketStart);
+            MinuteBucket bucket = ring.get(slot(minute));
+            if (bucket == null || bucket.minute != minute) {
+                return;
+            }
+            bucket.counts.forEach((key, count) -> {
+                if (key.startsWith(prefix)) {
+                    counts.put(key.substring(prefix.length()), count.sum());
+                }
+            });
+        });
+    }
+
+    private static ChronoUnit unitOf(String granularity) {
+        return switch (granularity) {
+            case GRANULARITY_MINUTE -> ChronoUnit.MINUTES;
+            case GRANULARITY_HOUR -> ChronoUnit.HOURS;
+            case GRANULARITY_DAY -> ChronoUnit.DAYS;
+            default -> throw new IllegalArgumentException("Unknown granularity: " + granularity);
+        };
+    }
+
+    // ==================== MAINTENANCE (journal loader thread) ====================
+
+    /**
+     * (Re)fills the ring with the recent window from audit_logs. Called by
+     * {@link AuditChangeFeed} inside the snapshot it warms every view from.
+     */
+    void warmUp() {
+        for (int i = 0; i < ring.length(); i++) {
+            ring.set(i, null);
+        }
+        LocalDateTime since = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES).minusMinutes(windowMinutes - 1);
+        warmDimension(AuditStatistics.DIMENSION_ACTION, "action", since);
+        warmDimension(AuditStatistics.DIMENSION_STATUS, "status", since);
+        warmDimension(AuditStatistics.DIMENSION_RESOURCE_TYPE, "resource_type", since);
+        warmDimension(AuditStatistics.DIMENSION_USER, "username", since);
+        warm = true;
+        log.info("Audit minute buckets warmed for the last {} minutes", windowMinutes);
+    }
+
+    private void warmDimension(String dimension, String column, LocalDateTime since) {
+        jdbcTemplate.query(String.format(WARM_SQL, column), rs -> {
+            long minute = epochMinute(rs.getTimestamp(1).toLocalDateTime());
+            long count = rs.getLong(3);
+            add(minute, dimension, rs.getString(2), count);
+            // Every row has an action, so the action pass also yields the totals
+            if (AuditStatistics.DIMENSION_ACTION.equals(dimension)) {
+                add(minute, AuditStatistics.DIMENSION_TOTAL, "", count);
+            }
+        }, Timestamp.valueOf(since));
+    }
+
+    /** Adds entries that have just been committed to audit_logs. */
+    void record(List<AuditLog> entries) {
+        if (!warm) {
+            // warmUp will read them from the table
+            return;
+        }
+        for (AuditLog entry : entries) {
+            long minute = epochMinute(entry.getTimestamp());
+            add(minute, AuditStatistics.DIMENSION_TOTAL, "", 1);
+            add(minute, AuditStatistics.DIMENSION_ACTION, AuditStatistics.valueOf(entry.getAction()), 1);
+            add(minute, AuditStatistics.DIMENSION_STATUS, AuditStatistics.valueOf(entry.getStatus()), 1);
+            add(minute, AuditStatistics.DIMENSION_RESOURCE_TYPE,
+                    AuditStatistics.valueOf(entry.getResourceType()), 1);
+            add(minute, AuditStatistics.DIMENSION_USER, AuditStatistics.valueOf(entry.getUsername()), 1);
+        }
+    }
+
+    /** Adds {@code count} to one value of a minute bucket, unless the minute has left the window. */
+    void add(long minute, String dimension, String value, long count) {
+        int slot = slot(minute);
+        MinuteBucket bucket = ring.get(slot);
+        if (bucket == null || bucket.minute < minute) {
+            bucket = new MinuteBucket(minute);
+            ring.set(slot, bucket);
+        } else if (bucket.minute > minute) {
+            // Older than the window
+            return;
+        }
+        bucket.counts.computeIfAbsent(dimension + ":" + value, key -> new LongAdder()).add(count);
+    }
+
+    private int slot(long minute) {
+        return (int) Math.floorMod(minute, (long) windowMinutes);
+    }
+
+    private static long epochMinute(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+}
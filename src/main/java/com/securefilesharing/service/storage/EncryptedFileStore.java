@@ -0,0 +1,602 @@
+package com.securefilesharing.service.storage;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.CipherInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads and writes encrypted file content on disk.
+ *
+ * New files are written in the {@link SegmentedCipherFormat} with the active
+ * key of the {@link CryptoEngine}; each header carries the id of its key.
+ * Files written before that format existed (whole-file AES/ECB with the
+ * built-in key) are still readable and can be rewritten in place with
+ * {@link #migrate(Path)}.
+ */
+@Component
+public class EncryptedFileStore {
+
+    /** Whole-file AES/ECB, no header. */
+    public static final int FORMAT_LEGACY = 1;
+    /** {@link SegmentedCipherFormat}. */
+    public static final int FORMAT_SEGMENTED = SegmentedCipherFormat.VERSION;
+
+    // Copy buffer for the legacy stream path; one per request thread, reused across calls.
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<byte[]> STREAM_BUFFER = ThreadLocal.withInitial(() -> new byte[STREAM_BUFFER_SIZE]);
+
+    // Segments handed to a worker as one task in the parallel path (1 MiB of plaintext).
+    private static final int SEGMENTS_PER_TASK = 16;
+
+    private final CryptoEngine cryptoEngine;
+    private final long parallelThresholdBytes;
+    private final int maxInFlightPerUpload;
+    private final ExecutorService encryptionPool;
+
+    public EncryptedFileStore(CryptoEngine cryptoEngine,
+            @Value("${app.storage.parallel.threshold-bytes:8388608}") long parallelThresholdBytes,
+            @Value("${app.storage.parallel.threads:0}") int parallelThreads,
+            @Value("${app.storage.parallel.max-in-flight:4}") int maxInFlightPerUpload) {
+        this.cryptoEngine = cryptoEngine;
+        this.parallelThresholdBytes = parallelThresholdBytes;
+        this.maxInFlightPerUpload = Math.max(1, maxInFlightPerUpload);
+        int threads = parallelThreads > 0 ? parallelThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.encryptionPool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "file-encrypt-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        encryptionPool.shutdownNow();
+    }
+
+    /**
+     * Encrypts {@code in} into a new segmented file at {@code target}.
+     * Memory use is two plaintext segments plus one sealed segment.
+     *
+     * @return number of plaintext bytes written
+     */
+    public long write(InputStream in, Path target) throws IOException {
+        return write(in, target, -1);
+    }
+
+    /**
+     * Same as {@link #write(InputStream, Path)}, but inputs of at least
+     * {@code app.storage.parallel.threshold-bytes} are sealed on the shared
+     * encryption pool. {@code expectedLength} is only used to pick the path;
+     * pass -1 when unknown.
+     */
+    public long write(InputStream in, Path target, long expectedLength) throws IOException {
+        if (expectedLength >= parallelThresholdBytes) {
+            return writeParallel(in, target);
+        }
+        return writeSequential(in, target);
+    }
+
+    private long writeSequential(InputStream in, Path target) throws IOException {
+        int segmentSize = SegmentedCipherFormat.DEFAULT_SEGMENT_SIZE;
+        byte[] noncePrefix = cryptoEngine.newNoncePrefix();
+
+        byte[] current = new byte[segmentSize];
+        byte[] next = new byte[segmentSize];
+        ByteBuffer sealed = ByteBuffer.allocate(segmentSize + SegmentedCipherFormat.TAG_LENGTH);
+
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long position = SegmentedCipherFormat.HEADER_SIZE;
+            long total = 0;
+            long index = 0;
+            int currentLength = readFully(in, current);
+            while (true) {
+                // Read one segment ahead so the last segment can be flagged in its AAD.
+                int nextLength = currentLength == segmentSize ? readFully(in, next) : 0;
+                boolean last = nextLength == 0;
+
+                cryptoEngine.sealSegment(noncePrefix, index, last, current, 0, currentLength, sealed);
+                position += writeFully(channel, sealed, position);
+                total += currentLength;
+                if (last) {
+                    break;
+                }
+
+                byte[] swap = current;
+                current = next;
+                next = swap;
+                currentLength = nextLength;
+                index++;
+            }
+
+            SegmentedCipherFormat.writeHeader(channel,
+                    new SegmentedCipherFormat.Header(cryptoEngine.getActiveKeyId(), segmentSize, total, noncePrefix));
+            return total;
+        }
+    }
+
+    /**
+     * Reads the input on the calling thread in tasks of {@link #SEGMENTS_PER_TASK}
+     * segments and seals them on the encryption pool. Each task writes its
+     * segments at their computed offsets, so completion order does not matter.
+     * At most {@code app.storage.parallel.max-in-flight} tasks per upload are
+     * queued or running, which bounds both memory and the share of the pool
+     * one upload can take. If the upload fails, queued tasks are skipped and
+     * running ones are waited for, so no task writes after the channel closes.
+     */
+    private long writeParallel(InputStream source, Path target) throws IOException {
+        int segmentSize = SegmentedCipherFormat.DEFAULT_SEGMENT_SIZE;
+        int taskSize = segmentSize * SEGMENTS_PER_TASK;
+        byte[] noncePrefix = cryptoEngine.newNoncePrefix();
+        PushbackInputStream in = new PushbackInputStream(source, 1);
+        Semaphore inFlight = new Semaphore(maxInFlightPerUpload);
+        BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(maxInFlightPerUpload);
+        Deque<Future<?>> pending = new ArrayDeque<>();
+        AtomicBoolean aborted = new AtomicBoolean();
+
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            try {
+                long total = 0;
+                long firstIndex = 0;
+                while (true) {
+                    inFlight.acquire();
+                    byte[] chunk = buffers.poll();
+                    if (chunk == null) {
+                        chunk = new byte[taskSize];
+                    }
+                    int length = readFully(in, chunk);
+                    boolean last = length < taskSize || isAtEnd(in);
+
+                    byte[] taskChunk = chunk;
+                    long taskFirstIndex = firstIndex;
+                    pending.add(encryptionPool.submit(() -> {
+                        try {
+                            if (aborted.get()) {
+                                return null;
+                            }
+                            sealTask(channel, noncePrefix, taskFirstIndex, last, taskChunk, length, segmentSize);
+                            return null;
+                        } finally {
+                            buffers.offer(taskChunk);
+                            inFlight.release();
+                        }
+                    }));
+                    total += length;
+                    firstIndex += SEGMENTS_PER_TASK;
+                    if (last) {
+                        break;
+                    }
+                    // Surface failures early instead of reading the rest of the upload.
+                    while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+                        await(pending.pollFirst());
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    await(pending.pollFirst());
+                }
+
+                SegmentedCipherFormat.writeHeader(channel,
+                        new SegmentedCipherFormat.Header(cryptoEngine.getActiveKeyId(), segmentSize, total, noncePrefix));
+                return total;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while encrypting upload");
+            } finally {
+                // Not cancel(true): interrupting a task closes the channel under the others
+                aborted.set(true);
+                awaitQuietly(pending);
+            }
+        }
+    }
+
+    private void sealTask(FileChannel channel, byte[] noncePrefix, long firstIndex, boolean lastTask,
+            byte[] chunk, int length, int segmentSize) throws IOException {
+        ByteBuffer sealed = ByteBuffer.allocate(segmentSize + SegmentedCipherFormat.TAG_LENGTH);
+        int segments = length == 0 ? 1 : (length + segmentSize - 1) / segmentSize;
+        for (int i = 0; i < segments; i++) {
+            long index = firstIndex + i;
+            int offset = i * segmentSize;
+            int segmentLength = Math.min(segmentSize, length - offset);
+            cryptoEngine.sealSegment(noncePrefix, index, lastTask && i == segments - 1, chunk, offset, segmentLength,
+                    sealed);
+            writeFully(channel, sealed, SegmentedCipherFormat.segmentOffset(segmentSize, index));
+        }
+    }
+
+    private static boolean isAtEnd(PushbackInputStream in) throws IOException {
+        int next = in.read();
+        if (next == -1) {
+            return true;
+        }
+        in.unread(next);
+        return false;
+    }
+
+    private static void await(Future<?> future) throws IOException, InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Segment encryption failed", cause);
+        }
+    }
+
+    // Waits for tasks that are still queued or running, ignoring their outcome and interrupts
+    private static void awaitQuietly(Deque<Future<?>> pending) {
+        boolean interrupted = false;
+        for (Future<?> future : pending) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (Exception e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Header for a file that is staged piece by piece with
+     * {@link #appendSegments}. The plaintext length must be known up front so
+     * the last segment can be flagged when it is sealed.
+     */
+    public SegmentedCipherFormat.Header newStagedHeader(long plaintextLength) {
+        return new SegmentedCipherFormat.Header(cryptoEngine.getActiveKeyId(), SegmentedCipherFormat.DEFAULT_SEGMENT_SIZE,
+                plaintextLength, cryptoEngine.newNoncePrefix());
+    }
+
+    /**
+     * Seals plaintext starting at {@code offset} into the staging file at the
+     * segment offsets given by {@code header}. Only whole segments (or the
+     * final, shorter one) are written; a trailing partial segment is dropped and
+     * must be sent again. If reading {@code in} fails part way, the segments
+     * already written are kept.
+     *
+     * @return plaintext offset up to which the staging file is now durable
+     */
+    public long appendSegments(Path staging, SegmentedCipherFormat.Header header, long offset, InputStream in)
+            throws IOException {
+        if (header.getKeyId() != cryptoEngine.getActiveKeyId()) {
+            throw new IOException("Encryption key changed since the upload started; start a new upload");
+        }
+        int segmentSize = header.getSegmentSize();
+        if (offset % segmentSize != 0) {
+            throw new IOException("Offset must be a multiple of the segment size " + segmentSize);
+        }
+        long total = header.getPlaintextLength();
+        long segmentCount = header.getSegmentCount();
+        byte[] plain = new byte[segmentSize];
+        ByteBuffer sealed = ByteBuffer.allocate(segmentSize + SegmentedCipherFormat.TAG_LENGTH);
+
+        try (FileChannel channel = FileChannel.open(staging, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long acknowledged = offset;
+            while (acknowledged < total) {
+                long index = acknowledged / segmentSize;
+                int expected = header.segmentPlaintextLength(index);
+                int read;
+                try {
+                    read = readFully(in, plain, expected);
+                } catch (IOException e) {
+                    // Client went away mid-chunk; keep what was sealed so far.
+                    break;
+                }
+                if (read < expected) {
+                    break;
+                }
+                cryptoEngine.sealSegment(header.getNoncePrefix(), index, index == segmentCount - 1, plain, 0, read,
+                        sealed);
+                writeFully(channel, sealed, header.segmentOffset(index));
+                acknowledged += read;
+            }
+            channel.force(false);
+            return acknowledged;
+        }
+    }
+
+    /**
+     * Copies the first {@code sealedBytes} of plaintext in a staging file to
+     * {@code target}, re-sealed under a fresh nonce prefix with the active key.
+     * Used when an earlier append may have sealed segments beyond
+     * {@code sealedBytes} without its progress being recorded: the client sends
+     * those bytes again, and sealing them under the old nonces would reuse a
+     * GCM nonce for different plaintext.
+     *
+     * @return header describing {@code target}
+     */
+    public SegmentedCipherFormat.Header resealStaged(Path staging, SegmentedCipherFormat.Header header,
+            long sealedBytes, Path target) throws IOException {
+        int segmentSize = header.getSegmentSize();
+        long segmentCount = header.getSegmentCount();
+        long count = sealedBytes >= header.getPlaintextLength() ? segmentCount : sealedBytes / segmentSize;
+        SegmentedCipherFormat.Header fresh = new SegmentedCipherFormat.Header(cryptoEngine.getActiveKeyId(),
+                segmentSize, header.getPlaintextLength(), cryptoEngine.newNoncePrefix());
+
+        ByteBuffer sealed = ByteBuffer.allocate(segmentSize + SegmentedCipherFormat.TAG_LENGTH);
+        byte[] plain = new byte[segmentSize];
+        Files.deleteIfExists(target);
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            if (count > 0) {
+                try (FileChannel source = FileChannel.open(staging, StandardOpenOption.READ)) {
+                    for (long index = 0; index < count; index++) {
+                        boolean last = index == segmentCount - 1;
+                        int opened = readSegment(source, header, index, last, sealed, plain);
+                        cryptoEngine.sealSegment(fresh.getNoncePrefix(), index, last, plain, 0, opened, sealed);
+                        writeFully(channel, sealed, fresh.segmentOffset(index));
+                    }
+                }
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+        return fresh;
+    }
+
+    /**
+     * Completes a staging file once all plaintext has been appended: checks
+     * that every segment is present and writes the header.
+     */
+    public void finishStaged(Path staging, SegmentedCipherFormat.Header header) throws IOException {
+        try (FileChannel channel = FileChannel.open(staging, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long lastIndex = header.getSegmentCount() - 1;
+            if (header.getPlaintextLength() == 0) {
+                // An empty file still carries one sealed, empty segment.
+                ByteBuffer sealed = ByteBuffer.allocate(SegmentedCipherFormat.TAG_LENGTH);
+                cryptoEngine.sealSegment(header.getNoncePrefix(), 0, true, new byte[0], 0, 0, sealed);
+                writeFully(channel, sealed, header.segmentOffset(0));
+            }
+            long expectedSize = header.segmentOffset(lastIndex) + header.segmentPlaintextLength(lastIndex)
+                    + SegmentedCipherFormat.TAG_LENGTH;
+            if (channel.size() != expectedSize) {
+                throw new IOException("Staged upload is incomplete");
+            }
+            SegmentedCipherFormat.writeHeader(channel, header);
+            channel.force(true);
+        }
+    }
+
+    /** On-disk format of a stored file: {@link #FORMAT_LEGACY} or {@link #FORMAT_SEGMENTED}. */
+    public int formatOf(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return isSegmented(channel) ? FORMAT_SEGMENTED : FORMAT_LEGACY;
+        }
+    }
+
+    /** Unsigned key id the stored file is sealed with; legacy files use the built-in key. */
+    public int keyIdOf(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            byte keyId = isSegmented(channel)
+                    ? SegmentedCipherFormat.readHeader(channel).getKeyId()
+                    : CryptoEngine.LEGACY_KEY_ID;
+            return keyId & 0xff;
+        }
+    }
+
+    /** Unsigned id of the key new content is sealed with. */
+    public int activeKeyId() {
+        return cryptoEngine.getActiveKeyId() & 0xff;
+    }
+
+    /**
+     * Rewrites a stored file in place so it is in the segmented format and
+     * sealed with the active key. Legacy files are re-encrypted from a
+     * decrypting stream; segmented files under an older key are re-sealed
+     * segment by segment. The new content is written next to the original and
+     * atomically moved over it, so readers never see a half-written file.
+     *
+     * @return true if the file was rewritten, false if it was already current
+     */
+    public boolean migrate(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".migrating");
+        Files.deleteIfExists(temp);
+        try {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (isSegmented(channel)) {
+                    SegmentedCipherFormat.Header header = SegmentedCipherFormat.readHeader(channel);
+                    if (header.getKeyId() == cryptoEngine.getActiveKeyId()) {
+                        return false;
+                    }
+                    reseal(channel, header, temp);
+                } else {
+                    try (InputStream in = legacyStream(channel)) {
+                        write(in, temp);
+                    }
+                }
+            }
+            try (FileChannel written = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                written.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Plaintext length of a stored file. Segmented files carry it in their
+     * header; legacy files fall back to the length recorded at upload time.
+     */
+    public Long plaintextLength(Path path, Long recordedLength) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (isSegmented(channel)) {
+                return SegmentedCipherFormat.readHeader(channel).getPlaintextLength();
+            }
+        }
+        return recordedLength;
+    }
+
+    /** Decrypts the whole stored file into {@code out}. */
+    public void copyTo(Path path, OutputStream out) throws IOException {
+        copyRange(path, 0, Long.MAX_VALUE, out);
+    }
+
+    /**
+     * Decrypts plaintext bytes {@code start..end} (inclusive) into {@code out}.
+     * For segmented files only the segments covering the range are read.
+     */
+    public void copyRange(Path path, long start, long end, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (isSegmented(channel)) {
+                copySegmentRange(channel, start, end, out);
+            } else {
+                copyLegacyRange(channel, start, end, out);
+            }
+        }
+        out.flush();
+    }
+
+    private void copySegmentRange(FileChannel channel, long start, long end, OutputStream out) throws IOException {
+        SegmentedCipherFormat.Header header = SegmentedCipherFormat.readHeader(channel);
+        long length = header.getPlaintextLength();
+        if (length == 0 || start >= length) {
+            return;
+        }
+        long last = Math.min(end, length - 1);
+        int segmentSize = header.getSegmentSize();
+        long firstSegment = start / segmentSize;
+        long lastSegment = last / segmentSize;
+        long segmentCount = header.getSegmentCount();
+
+        ByteBuffer sealed = ByteBuffer.allocate(segmentSize + SegmentedCipherFormat.TAG_LENGTH);
+        byte[] plain = new byte[segmentSize];
+
+        for (long index = firstSegment; index <= lastSegment; index++) {
+            int opened = readSegment(channel, header, index, index == segmentCount - 1, sealed, plain);
+            int from = index == firstSegment ? (int) (start % segmentSize) : 0;
+            int to = index == lastSegment ? (int) (last % segmentSize) + 1 : opened;
+            out.write(plain, from, to - from);
+        }
+    }
+
+    private void copyLegacyRange(FileChannel channel, long start, long end, OutputStream out) throws IOException {
+        // Legacy files have no segment index, so a range is served by decrypting up to it.
+        try (InputStream in = legacyStream(channel)) {
+            in.skipNBytes(start);
+            long remaining = end == Long.MAX_VALUE ? Long.MAX_VALUE : end - start + 1;
+            byte[] buffer = STREAM_BUFFER.get();
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    break;
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    private void reseal(FileChannel source, SegmentedCipherFormat.Header header, Path target) throws IOException {
+        byte[] noncePrefix = cryptoEngine.newNoncePrefix();
+        int segmentSize = header.getSegmentSize();
+        long segmentCount = header.getSegmentCount();
+
+        ByteBuffer sealed = ByteBuffer.allocate(segmentSize + SegmentedCipherFormat.TAG_LENGTH);
+        byte[] plain = new byte[segmentSize];
+
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (long index = 0; index < segmentCount; index++) {
+                boolean last = index == segmentCount - 1;
+                int opened = readSegment(source, header, index, last, sealed, plain);
+                cryptoEngine.sealSegment(noncePrefix, index, last, plain, 0, opened, sealed);
+                writeFully(channel, sealed, header.segmentOffset(index));
+            }
+            SegmentedCipherFormat.writeHeader(channel, new SegmentedCipherFormat.Header(
+                    cryptoEngine.getActiveKeyId(), segmentSize, header.getPlaintextLength(), noncePrefix));
+        }
+    }
+
+    private int readSegment(FileChannel channel, SegmentedCipherFormat.Header header, long index, boolean last,
+            ByteBuffer sealed, byte[] plain) throws IOException {
+        int plainLength = header.segmentPlaintextLength(index);
+        sealed.clear().limit(plainLength + SegmentedCipherFormat.TAG_LENGTH);
+        readFully(channel, sealed, header.segmentOffset(index));
+        sealed.flip();
+        return cryptoEngine.openSegment(header.getKeyId(), header.getNoncePrefix(), index, last, sealed, plain);
+    }
+
+    private InputStream legacyStream(FileChannel channel) throws IOException {
+        return new CipherInputStream(Channels.newInputStream(channel), cryptoEngine.legacyDecryptCipher());
+    }
+
+    private boolean isSegmented(FileChannel channel) throws IOException {
+        ByteBuffer start = ByteBuffer.allocate(SegmentedCipherFormat.MAGIC.length);
+        while (start.hasRemaining()) {
+            if (channel.read(start, start.position()) < 0) {
+                return false;
+            }
+        }
+        start.flip();
+        return SegmentedCipherFormat.hasMagic(start);
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        return readFully(in, buffer, buffer.length);
+    }
+
+    private static int readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = in.read(buffer, total, length - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Encrypted file is truncated");
+            }
+            position += read;
+        }
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+}
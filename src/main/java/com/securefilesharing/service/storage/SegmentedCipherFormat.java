@@ -0,0 +1,153 @@
+package com.securefilesharing.service.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Seekable encrypted container used for stored files.
+ *
+ * A fixed 32-byte header is followed by the plaintext split into fixed-size
+ * segments, each sealed independently with AES-GCM. Every segment except the
+ * last has the same sealed length, so the offset of segment {@code i} is
+ * computed from the header rather than read from an index table, and a byte
+ * range can be served by decrypting only the segments it touches.
+ *
+ * Header: magic "SFSC" | version (1) | key id (1) | reserved (2) | segment size (4) |
+ * plaintext length (8) | nonce prefix (8) | reserved (4).
+ * Segment nonce: nonce prefix (8) | segment index (4).
+ * Segment AAD: segment index (4) | last-segment flag (1), so segments cannot
+ * be reordered and the file cannot be truncated at a segment boundary.
+ */
+public final class SegmentedCipherFormat {
+
+    public static final byte[] MAGIC = "SFSC".getBytes(StandardCharsets.US_ASCII);
+    public static final byte VERSION = 2;
+    public static final int HEADER_SIZE = 32;
+    public static final int NONCE_PREFIX_LENGTH = 8;
+    public static final int NONCE_LENGTH = 12;
+    public static final int TAG_LENGTH = 16;
+    public static final int TAG_LENGTH_BITS = TAG_LENGTH * 8;
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+
+    private SegmentedCipherFormat() {
+    }
+
+    public static final class Header {
+        private final byte keyId;
+        private final int segmentSize;
+        private final long plaintextLength;
+        private final byte[] noncePrefix;
+
+        public Header(byte keyId, int segmentSize, long plaintextLength, byte[] noncePrefix) {
+            this.keyId = keyId;
+            this.segmentSize = segmentSize;
+            this.plaintextLength = plaintextLength;
+            this.noncePrefix = noncePrefix;
+        }
+
+        public byte getKeyId() {
+            return keyId;
+        }
+
+        public int getSegmentSize() {
+            return segmentSize;
+        }
+
+        public long getPlaintextLength() {
+            return plaintextLength;
+        }
+
+        public byte[] getNoncePrefix() {
+            return noncePrefix;
+        }
+
+        /** Number of sealed segments; an empty file still carries one empty segment. */
+        public long getSegmentCount() {
+            if (plaintextLength == 0) {
+                return 1;
+            }
+            return (plaintextLength + segmentSize - 1) / segmentSize;
+        }
+
+        public long segmentOffset(long index) {
+            return SegmentedCipherFormat.segmentOffset(segmentSize, index);
+        }
+
+        public int segmentPlaintextLength(long index) {
+            return (int) Math.min(segmentSize, plaintextLength - index * segmentSize);
+        }
+    }
+
+    /** File offset of sealed segment {@code index}; every segment before it is full-sized. */
+    public static long segmentOffset(int segmentSize, long index) {
+        return HEADER_SIZE + index * (long) (segmentSize + TAG_LENGTH);
+    }
+
+    public static boolean hasMagic(ByteBuffer start) {
+        if (start.remaining() < MAGIC.length) {
+            return false;
+        }
+        byte[] magic = new byte[MAGIC.length];
+        start.duplicate().get(magic);
+        return Arrays.equals(magic, MAGIC);
+    }
+
+    public static void writeHeader(FileChannel channel, Header header) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE);
+        buf.put(MAGIC);
+        buf.put(VERSION);
+        buf.put(header.getKeyId());
+        buf.put(new byte[2]);
+        buf.putInt(header.getSegmentSize());
+        buf.putLong(header.getPlaintextLength());
+        buf.put(header.getNoncePrefix());
+        buf.put(new byte[4]);
+        buf.flip();
+        long position = 0;
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    public static Header readHeader(FileChannel channel) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE);
+        long position = 0;
+        while (buf.hasRemaining()) {
+            int read = channel.read(buf, position);
+            if (read < 0) {
+                throw new IOException("Encrypted file header is truncated");
+            }
+            position += read;
+        }
+        buf.flip();
+        if (!hasMagic(buf)) {
+            throw new IOException("Not a segmented encrypted file");
+        }
+        buf.position(MAGIC.length);
+        byte version = buf.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported encrypted file version: " + version);
+        }
+        byte keyId = buf.get();
+        buf.position(buf.position() + 2);
+        int segmentSize = buf.getInt();
+        long plaintextLength = buf.getLong();
+        byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        buf.get(noncePrefix);
+        if (segmentSize <= 0 || plaintextLength < 0) {
+            throw new IOException("Corrupt encrypted file header");
+        }
+        return new Header(keyId, segmentSize, plaintextLength, noncePrefix);
+    }
+
+    public static byte[] nonce(byte[] noncePrefix, long index) {
+        return ByteBuffer.allocate(NONCE_LENGTH).put(noncePrefix).putInt((int) index).array();
+    }
+
+    public static byte[] aad(long index, boolean last) {
+        return ByteBuffer.allocate(5).putInt((int) index).put((byte) (last ? 1 : 0)).array();
+    }
+}
@@ -678,6 +678,9 @@ let auditState = {
     pageSize: 20,
     totalPages: 0,
     totalItems: 0,
+    // cursors[n] is the "after" cursor that loads page n; page 0 starts from the newest entry
+    cursors: [null],
+    hasMore: false,
     filters: {
         username: '',
         action: '',
@@ -721,6 +724,50 @@ async function loadAuditFilters() {
     } catch (e) {
         console.error('Failed to load filters:', e);
     }
+    setupUsernameTypeahead();
+}
+
+/**
+ * Suggest usernames from the server-side dictionary while typing in the username filter
+ */
+function setupUsernameTypeahead() {
+    const input = document.getElementById('filterUsername');
+    if (!input || input.dataset.typeahead) return;
+    input.dataset.typeahead = 'true';
+
+    const list = document.createElement('datalist');
+    list.id = 'filterUsernameSuggestions';
+    input.after(list);
+    input.setAttribute('list', list.id);
+    input.setAttribute('autocomplete', 'off');
+
+    let timer = null;
+    input.addEventListener('input', () => {
+        window.clearTimeout(timer);
+        const prefix = input.value.trim();
+        if (!prefix) {
+            list.innerHTML = '';
+            return;
+        }
+        timer = window.setTimeout(async () => {
+            try {
+                const params = new URLSearchParams({ prefix, limit: '20' });
+                const response = await fetch(`${API_URL}/audit/filters/usernames?${params}`, {
+                    headers: authHeader()
+                });
+                if (!response.ok || input.value.trim() !== prefix) return;
+                const data = await response.json();
+                list.innerHTML = '';
+                (data.usernames || []).forEach(username => {
+                    const opt = document.createElement('option');
+                    opt.value = username;
+                    list.appendChild(opt);
+                });
+            } catch (e) {
+                console.error('Failed to load username suggestions:', e);
+            }
+        }, 150);
+    });
 }
 
 /**
@@ -750,7 +797,11 @@ async function loadAuditStats() {
  */
 async function loadAuditLogs() {
     const params = new URLSearchParams();
-    params.append('page', auditState.currentPage);
+    const cursor = auditState.cursors[auditState.currentPage];
+    params.append('cursor', 'true');
+    if (cursor) params.append('after', cursor);
+    // Counting is a separate query; only ask for it when a new result set starts
+    if (auditState.currentPage === 0) params.append('includeTotal', 'true');
     params.append('size', auditState.pageSize);
 
     if (auditState.filters.username) params.append('username', auditState.filters.username);
@@ -771,8 +822,12 @@ async function loadAuditLogs() {
         }
 
         const data = await response.json();
-        auditState.totalPages = data.totalPages || 1;
-        auditState.totalItems = data.totalItems || 0;
+        auditState.hasMore = !!data.hasMore;
+        auditState.cursors[auditState.currentPage + 1] = data.nextCursor || null;
+        if (data.totalItems !== undefined) {
+            auditState.totalItems = data.totalItems;
+            auditState.totalPages = Math.max(1, Math.ceil(data.totalItems / auditState.pageSize));
+        }
 
         renderAuditTable(data.logs || []);
         updatePagination();
@@ -912,7 +967,7 @@ function updatePagination() {
     if (showingToEl) showingToEl.textContent = to;
 
     if (prevBtn) prevBtn.disabled = auditState.currentPage === 0;
-    if (nextBtn) nextBtn.disabled = auditState.currentPage >= auditState.totalPages - 1;
+    if (nextBtn) nextBtn.disabled = !auditState.hasMore;
 }
 
 /**
@@ -929,7 +984,7 @@ function prevPage() {
  * Go to next page
  */
 function nextPage() {
-    if (auditState.currentPage < auditState.totalPages - 1) {
+    if (auditState.hasMore) {
         auditState.currentPage++;
         loadAuditLogs();
     }
@@ -946,6 +1001,7 @@ function applyFilters() {
     auditState.filters.startDate = document.getElementById('filterStartDate')?.value || '';
     auditState.filters.endDate = document.getElementById('filterEndDate')?.value || '';
     auditState.currentPage = 0; // Reset to first page
+    auditState.cursors = [null];
     loadAuditLogs();
 }
 
@@ -968,6 +1024,7 @@ function clearFilters() {
         endDate: ''
     };
     auditState.currentPage = 0;
+    auditState.cursors = [null];
     loadAuditLogs();
 }
 
@@ -0,0 +1,168 @@
+package com.securefilesharing.service.audit;
+
+import com.securefilesharing.entity.AuditLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Round trips through {@link AuditArchiveWriter} and {@link AuditArchiveReader},
+ * and block skipping by the footer statistics.
+ */
+class AuditArchiveFormatTest {
+
+    private static final int BLOCK = AuditArchiveFormat.ROWS_PER_BLOCK;
+    private static final LocalDateTime DAY = LocalDateTime.of(2024, 3, 1, 0, 0);
+
+    // One action and one hour per block, so every block is told apart by its footer statistics
+    private static final String[] BLOCK_ACTIONS = { "LOGIN", "FILE_UPLOAD", "FILE_DOWNLOAD" };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsEveryColumnInBothScanOrders() throws IOException {
+        List<AuditLog> entries = entries(3 * BLOCK + 10);
+        Path file = write(entries);
+
+        List<AuditLog> oldestFirst = new ArrayList<>();
+        List<AuditLog> newestFirst = new ArrayList<>();
+        try (AuditArchiveReader reader = AuditArchiveReader.open(file)) {
+            reader.scanAll(oldestFirst::add);
+            reader.scanNewestFirst(filter(null, null, null, null, null, null), newestFirst::add);
+        }
+
+        assertSameEntries(entries, oldestFirst);
+        Collections.reverse(newestFirst);
+        assertSameEntries(entries, newestFirst);
+    }
+
+    @Test
+    void countsMatchTheFiltersAcrossBlocks() throws IOException {
+        List<AuditLog> entries = entries(3 * BLOCK + 10);
+        Path file = write(entries);
+
+        try (AuditArchiveReader reader = AuditArchiveReader.open(file)) {
+            assertEquals(entries.size(), reader.count(filter(null, null, null, null, null, null)));
+            assertEquals(BLOCK, reader.count(filter(null, "FILE_UPLOAD", null, null, null, null)));
+            assertEquals(entries.stream().filter(e -> "FAILURE".equals(e.getStatus())).count(),
+                    reader.count(filter(null, null, "FAILURE", null, null, null)));
+            // Substring match, ignoring case
+            assertEquals(entries.stream().filter(e -> "Bob".equals(e.getUsername())).count(),
+                    reader.count(filter("bo", null, null, null, null, null)));
+            assertEquals(entries.stream().filter(e -> e.getFileName() != null).count(),
+                    reader.count(filter(null, null, null, "ÉTÉ.PDF", null, null)));
+            assertEquals(0, reader.count(filter(null, "NEVER_LOGGED", null, null, null, null)));
+        }
+    }
+
+    @Test
+    void cursorResumesBeforeTheLastEntrySeen() throws IOException {
+        List<AuditLog> entries = entries(BLOCK + 10);
+        Path file = write(entries);
+        AuditLog last = entries.get(BLOCK + 2);
+
+        List<AuditLog> page = new ArrayList<>();
+        try (AuditArchiveReader reader = AuditArchiveReader.open(file)) {
+            boolean completed = reader.scanNewestFirst(new AuditArchiveFilter(null, null, null, null, null, null,
+                    null, null, last.getTimestamp(), last.getId()), entry -> page.add(entry) && page.size() < 3);
+            assertFalse(completed);
+        }
+
+        assertSameEntries(List.of(entries.get(BLOCK + 1), entries.get(BLOCK), entries.get(BLOCK - 1)), page);
+    }
+
+    @Test
+    void blocksRuledOutByTheFooterAreNeverRead() throws IOException {
+        List<AuditLog> entries = entries(3 * BLOCK);
+        Path file = write(entries);
+
+        // Damage the first block; a query that reads it fails
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            byte[] junk = new byte[256];
+            Arrays.fill(junk, (byte) 0x7f);
+            channel.write(ByteBuffer.wrap(junk), 5);
+        }
+
+        try (AuditArchiveReader reader = AuditArchiveReader.open(file)) {
+            assertEquals(BLOCK, reader.count(filter(null, "FILE_DOWNLOAD", null, null, null, null)));
+            assertEquals(2 * BLOCK, reader.count(filter(null, null, null, null, DAY.plusHours(1), null)));
+            assertEquals(BLOCK, reader.count(filter(null, null, null, null, DAY.plusHours(1),
+                    DAY.plusHours(1).plusMinutes(59))));
+            assertThrows(Exception.class, () -> reader.count(filter(null, "LOGIN", null, null, null, null)));
+        }
+    }
+
+    private Path write(List<AuditLog> entries) throws IOException {
+        Path file = dir.resolve("audit-" + System.nanoTime() + ".acol");
+        try (AuditArchiveWriter writer = new AuditArchiveWriter(file)) {
+            for (AuditLog entry : entries) {
+                writer.append(entry);
+            }
+            writer.finish();
+            assertEquals(entries.size(), writer.rowCount());
+        }
+        return file;
+    }
+
+    // Ascending (timestamp, id) like the archiver writes them, with nulls in every nullable column
+    private static List<AuditLog> entries(int count) {
+        String[] usernames = { "alice", "Bob", null, "carol" };
+        List<AuditLog> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int block = Math.min(i / BLOCK, BLOCK_ACTIONS.length - 1);
+            AuditLog entry = new AuditLog();
+            entry.setId(1000L + i * 3L);
+            // Several rows share a microsecond so the id breaks the tie
+            entry.setTimestamp(DAY.plusHours(block).plusNanos((i - block * BLOCK) / 2 * 437_000L));
+            entry.setAction(BLOCK_ACTIONS[block]);
+            entry.setStatus(i % 7 == 0 ? "FAILURE" : "SUCCESS");
+            entry.setUsername(usernames[i % usernames.length]);
+            entry.setRole(i % 5 == 0 ? null : "ROLE_USER");
+            entry.setResourceType(i % 2 == 0 ? "FILE" : null);
+            entry.setUserId(i % 4 == 2 ? null : (long) (i % 4));
+            entry.setResourceId(i % 3 == 0 ? null : (long) -i);
+            entry.setFileId(i % 2 == 0 ? (long) i : null);
+            entry.setFileOwnerId(i % 2 == 0 ? 7L : null);
+            entry.setTargetUserId(i % 11 == 0 ? 42L : null);
+            entry.setFileName(i % 2 == 0 ? "report-" + i + "-été.pdf" : null);
+            entry.setIpAddress("10.0.0." + (i % 256));
+            entry.setUserAgent(i % 9 == 0 ? null : "Mozilla/5.0");
+            entry.setDetails(i % 13 == 0 ? "" : null);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static AuditArchiveFilter filter(String username, String action, String status, String fileName,
+            LocalDateTime startDate, LocalDateTime endDate) {
+        return new AuditArchiveFilter(null, username, action, status, null, fileName, startDate, endDate, null, null);
+    }
+
+    private static void assertSameEntries(List<AuditLog> expected, List<AuditLog> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(describe(expected.get(i)), describe(actual.get(i)), "entry " + i);
+        }
+    }
+
+    private static List<Object> describe(AuditLog e) {
+        return Arrays.asList(e.getId(), e.getTimestamp(), e.getAction(), e.getStatus(), e.getUsername(), e.getRole(),
+                e.getResourceType(), e.getUserId(), e.getResourceId(), e.getFileId(), e.getFileOwnerId(),
+                e.getTargetUserId(), e.getFileName(), e.getIpAddress(), e.getUserAgent(), e.getDetails());
+    }
+}
@@ -0,0 +1,164 @@
+package com.securefilesharing.service.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trips through the {@link SegmentedCipherFormat} and the failures a
+ * damaged or truncated file must produce.
+ */
+class EncryptedFileStoreTest {
+
+    private static final int SEGMENT = SegmentedCipherFormat.DEFAULT_SEGMENT_SIZE;
+
+    // magic (4) | version (1) | key id (1) | reserved (2) | segment size (4)
+    private static final long PLAINTEXT_LENGTH_OFFSET = 12;
+
+    @TempDir
+    Path dir;
+
+    private EncryptedFileStore store;
+
+    @BeforeEach
+    void setUp() {
+        // Parallel path for inputs of 1 MiB and more
+        store = new EncryptedFileStore(new CryptoEngine(randomKey(), List.of(), ""), 1024 * 1024, 4, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    void roundTripsEmptyAndMultiSegmentContent() throws IOException {
+        for (int length : new int[] { 0, 1, SEGMENT - 1, SEGMENT, 3 * SEGMENT + 123 }) {
+            byte[] plain = content(length);
+            Path file = write(plain, -1);
+
+            assertEquals(SegmentedCipherFormat.HEADER_SIZE + length
+                    + sealedSegments(length) * SegmentedCipherFormat.TAG_LENGTH, file.toFile().length());
+            assertEquals(Long.valueOf(length), store.plaintextLength(file, null));
+            assertArrayEquals(plain, read(file), "length " + length);
+        }
+    }
+
+    @Test
+    void parallelWriteReadsBackLikeSequential() throws IOException {
+        byte[] plain = content(40 * SEGMENT + 7);
+        Path file = write(plain, plain.length);
+
+        assertEquals(EncryptedFileStore.FORMAT_SEGMENTED, store.formatOf(file));
+        assertArrayEquals(plain, read(file));
+    }
+
+    @Test
+    void rangeAcrossSegmentBoundaryDecryptsOnlyThoseBytes() throws IOException {
+        byte[] plain = content(3 * SEGMENT + 123);
+        Path file = write(plain, -1);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        store.copyRange(file, SEGMENT - 10, 2 * SEGMENT + 9, out);
+
+        assertArrayEquals(Arrays.copyOfRange(plain, SEGMENT - 10, 2 * SEGMENT + 10), out.toByteArray());
+    }
+
+    @Test
+    void tamperedByteFailsIntegrityCheck() throws IOException {
+        byte[] plain = content(2 * SEGMENT + 5);
+        Path file = write(plain, -1);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = SegmentedCipherFormat.segmentOffset(SEGMENT, 1) + 100;
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, position);
+            one.flip();
+            one.put(0, (byte) (one.get(0) ^ 0x01));
+            channel.write(one, position);
+        }
+
+        IOException e = assertThrows(IOException.class, () -> read(file));
+        assertTrue(e.getMessage().contains("segment 1"), e.getMessage());
+    }
+
+    @Test
+    void fileTruncatedAtSegmentBoundaryIsRejected() throws IOException {
+        byte[] plain = content(3 * SEGMENT);
+        Path file = write(plain, -1);
+
+        // Drop the last segment and shorten the header to match: the new last one was not sealed as the last
+        truncate(file, SegmentedCipherFormat.segmentOffset(SEGMENT, 2));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8).putLong(0, 2L * SEGMENT), PLAINTEXT_LENGTH_OFFSET);
+        }
+
+        IOException e = assertThrows(IOException.class, () -> read(file));
+        assertTrue(e.getMessage().contains("segment 1"), e.getMessage());
+    }
+
+    @Test
+    void fileTruncatedInsideSegmentIsRejected() throws IOException {
+        byte[] plain = content(2 * SEGMENT + 500);
+        Path file = write(plain, -1);
+
+        truncate(file, file.toFile().length() - 1);
+
+        assertThrows(IOException.class, () -> read(file));
+    }
+
+    private Path write(byte[] plain, long expectedLength) throws IOException {
+        Path file = dir.resolve("file-" + System.nanoTime());
+        long written = store.write(new ByteArrayInputStream(plain), file, expectedLength);
+        assertEquals(plain.length, written);
+        return file;
+    }
+
+    private byte[] read(Path file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        store.copyTo(file, out);
+        return out.toByteArray();
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    // An empty file still has one (empty) sealed segment
+    private static long sealedSegments(int length) {
+        return length == 0 ? 1 : (length + SEGMENT - 1) / SEGMENT;
+    }
+
+    private static byte[] content(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String randomKey() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return Base64.getEncoder().encodeToString(key);
+    }
+}